@@ -0,0 +1,348 @@
+package assign4;
+
+import tokenizer.IdentifierPool;
+import tokenizer.StreamingTokenizer;
+import tokenizer.TokenSource;
+import tokenizer.TokenStream;
+import tokenizer.Tokenizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parse many sources, held in files or in memory, and return the
+ * outcome of each, for use by other tools. Nothing is output.
+ *
+ * Each thread keeps one Tokenizer, Parser and SymbolTable, which are
+ * reset for each source rather than made anew, so their buffers are
+ * reused from one source to the next, whichever BatchParser is parsing
+ * on the thread. All the sources of a BatchParser share one pool of
+ * identifier names.
+ *
+ * Files larger than STREAMED_SIZE are not read whole, but lexed as
+ * they are read by a StreamingTokenizer, so that however large they
+ * are, little memory is needed to parse them.
+ *
+ * If wanted, files of at least SPLIT_SIZE, up to STREAMED_SIZE, have
+ * the subroutines of their class parsed in parallel, when only the
+ * first error of each is wanted; see Parser.parseClassInParallel().
+ *
+ * Files may also be checked against the other classes of a project;
+ * see ProjectIndex.
+ */
+public class BatchParser {
+    // Files larger than this are lexed as they are read.
+    public static final long STREAMED_SIZE = 16 * 1024 * 1024;
+    // Files this large or larger may have their subroutines parsed in parallel.
+    public static final long SPLIT_SIZE = 256 * 1024;
+    // The reusable parser of each thread.
+    private static final ThreadLocal<Worker> WORKERS = ThreadLocal.withInitial(Worker::new);
+
+    private final IdentifierPool pool = new IdentifierPool();
+    private final int jobs;
+    private final boolean allErrors;
+    private final boolean split;
+
+    /**
+     * A source to be parsed: either a file or text in memory.
+     */
+    public static class Source {
+        // The name to give its result.
+        public final String name;
+        // The file, or null if the text is given.
+        public final Path path;
+        // The text, or null if it is to be read from the file.
+        public final CharSequence text;
+
+        private Source(String name, Path path, CharSequence text) {
+            this.name = name;
+            this.path = path;
+            this.text = text;
+        }
+
+        /**
+         * @param path A Jack file.
+         * @return the file as a source, named by the last part of its name.
+         */
+        public static Source of(Path path) {
+            return new Source(path.getFileName().toString(), path, null);
+        }
+
+        /**
+         * @param name The name to give its result.
+         * @param text The source text of a class.
+         * @return the text as a source.
+         */
+        public static Source of(String name, CharSequence text) {
+            return new Source(name, null, text);
+        }
+    }
+
+    /**
+     * The parser of a thread, made when the thread first parses.
+     */
+    private static class Worker {
+        Tokenizer lex;
+        Parser parser;
+
+        /**
+         * @param pool A pool for the Tokenizer, if it is yet to be made.
+         * @return the Tokenizer, ready to be reset to a source.
+         */
+        Tokenizer tokenizer(IdentifierPool pool) {
+            if(lex == null) {
+                lex = new Tokenizer("", pool);
+                parser = new Parser(lex);
+            }
+            return lex;
+        }
+    }
+
+    /**
+     * Parse one source at a time, reporting only the first error of each.
+     */
+    public BatchParser() {
+        this(1, false);
+    }
+
+    /**
+     * @param jobs The number of sources to parse concurrently.
+     * @param allErrors Whether to report all the errors of a source,
+     *                  or only the first.
+     */
+    public BatchParser(int jobs, boolean allErrors) {
+        this(jobs, allErrors, false);
+    }
+
+    /**
+     * @param jobs The number of sources to parse concurrently.
+     * @param allErrors Whether to report all the errors of a source,
+     *                  or only the first.
+     * @param split Whether to parse the subroutines of large files
+     *              in parallel.
+     */
+    public BatchParser(int jobs, boolean allErrors, boolean split) {
+        if(jobs < 1) {
+            throw new IllegalArgumentException("jobs must be at least 1");
+        }
+        this.jobs = jobs;
+        this.allErrors = allErrors;
+        this.split = split;
+    }
+
+    /**
+     * Parse a file on this thread.
+     * @param path The file.
+     * @return the outcome.
+     * @throws IOException if the file cannot be read.
+     */
+    public ParseResult parse(Path path) throws IOException {
+        return parse(path, pool, allErrors, split, null);
+    }
+
+    /**
+     * Parse source text on this thread.
+     * @param name The name to give the result.
+     * @param text The source text of a class.
+     * @return the outcome.
+     */
+    public ParseResult parse(String name, CharSequence text) {
+        long start = System.nanoTime();
+        Worker worker = WORKERS.get();
+        worker.tokenizer(pool).reset(text, pool);
+        return parse(worker, name, allErrors, null, null, start);
+    }
+
+    /**
+     * Parse a source on this thread.
+     * @param source The source.
+     * @return the outcome.
+     * @throws IOException if the source is a file that cannot be read.
+     */
+    public ParseResult parse(Source source) throws IOException {
+        return source.text != null ? parse(source.name, source.text) : parse(source.path);
+    }
+
+    /**
+     * Parse many sources, the given number of jobs at a time.
+     * @param sources The sources.
+     * @return the outcome of each source, in the same order, or null
+     *         for a file that cannot be read.
+     */
+    public List<ParseResult> parse(List<Source> sources) {
+        List<ParseResult> results = new ArrayList<>(sources.size());
+        if(jobs <= 1 || sources.size() <= 1) {
+            for(Source source : sources) {
+                results.add(parseOrNull(source));
+            }
+            return results;
+        }
+        ForkJoinPool workers = new ForkJoinPool(jobs);
+        try {
+            List<Future<ParseResult>> pending = new ArrayList<>(sources.size());
+            for(Source source : sources) {
+                pending.add(workers.submit(() -> parseOrNull(source)));
+            }
+            for(Future<ParseResult> result : pending) {
+                results.add(result.get());
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", ex);
+        }
+        catch(ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * @return the pool of the names of the identifiers parsed.
+     */
+    public IdentifierPool getIdentifierPool() {
+        return pool;
+    }
+
+    private ParseResult parseOrNull(Source source) {
+        try {
+            return parse(source);
+        }
+        catch(IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a file on this thread with the given pool of names.
+     * @param path The file.
+     * @param pool The pool of identifier names.
+     * @param allErrors Whether to report all the errors, or only the first.
+     * @param split Whether to parse the subroutines of a large file in parallel.
+     * @param index The classes of the project to check the file against,
+     *              over the same pool, or null.
+     * @return the outcome.
+     * @throws IOException if the file cannot be read.
+     */
+    static ParseResult parse(Path path, IdentifierPool pool, boolean allErrors, boolean split,
+                             ProjectIndex index) throws IOException {
+        long start = System.nanoTime();
+        long size = Files.size(path);
+        if(size > STREAMED_SIZE) {
+            try(StreamingTokenizer lex = new StreamingTokenizer(path, pool)) {
+                Parser parser = new Parser(lex);
+                parser.useIndex(index, path.toString());
+                ParseResult result = parse(parser, lex, path.getFileName().toString(), allErrors, start);
+                if(lex.getError() != null) {
+                    throw lex.getError();
+                }
+                return result;
+            }
+        }
+        if(splits(size, allErrors, split)) {
+            // The text is read into buffers of its own, not the Worker's:
+            // while this thread waits for the subroutines, it may run the
+            // task of another file, which would refill them.
+            TokenStream tokens = TokenStream.lex(new Tokenizer(Tokenizer.read(path), pool));
+            Parser parser = new Parser(tokens);
+            parser.useIndex(index, path.toString());
+            try {
+                parser.parseClassInParallel();
+                return new ParseResult(path.getFileName().toString(), true, 0, parser.getClassSymbols(), null,
+                                       parser.getTokenCount(), System.nanoTime() - start);
+            }
+            catch(Exception ex) {
+                return new ParseResult(path.getFileName().toString(), false, tokens.getLineNumber(), null, null,
+                                       parser.getTokenCount(), System.nanoTime() - start);
+            }
+        }
+        Worker worker = WORKERS.get();
+        worker.tokenizer(pool).reset(path, pool);
+        return parse(worker, path.getFileName().toString(), allErrors, index, path.toString(), start);
+    }
+
+    /**
+     * @param size The size of a file.
+     * @param allErrors Whether to report all the errors, or only the first.
+     * @param split Whether to parse the subroutines of a large file in parallel.
+     * @return true if the file has its subroutines parsed in parallel.
+     */
+    static boolean splits(long size, boolean allErrors, boolean split) {
+        return split && !allErrors && size >= SPLIT_SIZE && size <= STREAMED_SIZE;
+    }
+
+    /**
+     * Collect the class-level declarations of a file on this thread,
+     * for a ProjectIndex.
+     * @param path The file.
+     * @param pool The pool of identifier names.
+     * @return the declarations, or null if the file cannot be read or
+     *         does not start with a class.
+     */
+    static ProjectIndex.ClassDeclarations declarations(Path path, IdentifierPool pool) {
+        String name = path.toString();
+        try {
+            if(Files.size(path) > STREAMED_SIZE) {
+                try(StreamingTokenizer lex = new StreamingTokenizer(path, pool)) {
+                    return ProjectIndex.scan(lex, name);
+                }
+            }
+            Tokenizer lex = WORKERS.get().tokenizer(pool);
+            lex.reset(path, pool);
+            return ProjectIndex.scan(lex, name);
+        }
+        catch(IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse the source a worker's Tokenizer has been reset to.
+     */
+    private static ParseResult parse(Worker worker, String name, boolean allErrors, ProjectIndex index,
+                                     String source, long start) {
+        worker.parser.reset();
+        worker.parser.useIndex(index, source);
+        return parse(worker.parser, worker.lex, name, allErrors, start);
+    }
+
+    /**
+     * Parse a whole class.
+     * @param parser The parser.
+     * @param lex Its source of tokens.
+     * @param name The name to give the result.
+     * @param allErrors Whether to report all the errors, or only the first.
+     * @param start When the work on the source started, by System.nanoTime().
+     * @return the outcome.
+     */
+    static ParseResult parse(Parser parser, TokenSource lex, String name, boolean allErrors, long start) {
+        if(allErrors) {
+            List<Diagnostic> diagnostics = parser.parseClassReportingErrors();
+            if(diagnostics.isEmpty()) {
+                return new ParseResult(name, true, 0, parser.getClassSymbols(), diagnostics,
+                                       parser.getTokenCount(), System.nanoTime() - start);
+            }
+            return new ParseResult(name, false, parser.getErrorLine(), null, diagnostics,
+                                   parser.getTokenCount(), System.nanoTime() - start);
+        }
+        try {
+            parser.parseClass();
+            // If we reach here, it is assumed that the parse was successful.
+            return new ParseResult(name, true, 0, parser.getClassSymbols(), null,
+                                   parser.getTokenCount(), System.nanoTime() - start);
+        }
+        catch(Exception ex) {
+            return new ParseResult(name, false, lex.getLineNumber(), null, null,
+                                   parser.getTokenCount(), System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package assign4;
+
+/**
+ * A class-level name declared by a source file:
+ * the class itself, a subroutine, a field or a static.
+ */
+public class ClassSymbol {
+    public final String name;
+    public final String type;
+    public final SymbolTable.Kind kind;
+
+    public ClassSymbol(String name, String type, SymbolTable.Kind kind) {
+        this.name = name;
+        this.type = type;
+        this.kind = kind;
+    }
+}
@@ -0,0 +1,37 @@
+package assign4;
+
+/**
+ * An error found in a source file.
+ */
+public class Diagnostic {
+    // The line and column of the token at which the error was found,
+    // counting from 1; the column is 0 if it is not known.
+    public final int line;
+    public final int column;
+    // What was wrong, such as "expected ';', found 'let'".
+    public final String message;
+
+    /**
+     * @param line The line of the error.
+     * @param column The column of the error, or 0 if not known.
+     * @param message What was wrong.
+     */
+    public Diagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * Format the diagnostic as either
+     *     line L, column C: message
+     * or, if the column is not known,
+     *     line L: message
+     * @return the formatted diagnostic.
+     */
+    @Override
+    public String toString() {
+        return column > 0 ? "line " + line + ", column " + column + ": " + message
+                          : "line " + line + ": " + message;
+    }
+}
@@ -0,0 +1,37 @@
+package assign4;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the parse of one source file, from
+ * opening it to the result. Its duration is the time taken.
+ *
+ * The event is only recorded with --stats, and costs next to nothing
+ * unless a recording that enables it is running, for example with
+ *     java -XX:StartFlightRecording=filename=parse.jfr assign4.Main --stats dir
+ */
+@Name("assign4.FileParsed")
+@Label("File Parsed")
+@Category({ "Jack", "Parser" })
+@Description("The parse of one Jack source file")
+@StackTrace(false)
+public class FileParsedEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("OK")
+    boolean ok;
+
+    @Label("Error Line")
+    int errorLine;
+}
@@ -1,51 +1,163 @@
 package assign4;
 
+import assign4.ParseStats.FileStats;
+import assign4.ParseStats.Phase;
+import tokenizer.IdentifierPool;
+import tokenizer.TokenStream;
 import tokenizer.Tokenizer;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Parse Jack source files and output an indication of either success or failure.
- * 
+ *
  * @author djb
  * @version 2020.12.05
  */
 public class Main {
     private static final String JACK_SUFFIX = ".jack";
+    // How many files each job may have waiting to be delivered.
+    private static final int MAX_PENDING_PER_JOB = 4;
+    private static final String USAGE =
+        "Usage: java Main [--jobs N] [--cache FILE] [--stats] [--all-errors] [--split] [--project] " +
+        "[--output text|ndjson] [--output-file FILE] file.jack OR dir";
     /**
-     * @param args Jack files or a directory of Jack files.
+     * @param args A Jack file or a directory tree of Jack files,
+     *             optionally preceded by --jobs N to parse N files at a time,
+     *             by --cache FILE to reuse the results of earlier runs
+     *             for files that have not changed, by --stats to
+     *             time the phases of parsing each file and summarise them,
+     *             by --all-errors to list every error found in a file
+     *             after the line giving the first, by --split to
+     *             parse the subroutines of large files in parallel
+     *             (see BatchParser), by --project to check the
+     *             files against each other as one program: the
+     *             subroutines they call, with the number of arguments,
+     *             and the classes they use (see ProjectIndex), by --output ndjson
+     *             to write the results as JSON (see ResultWriter), and
+     *             by --output-file FILE to write them to FILE rather than
+     *             the standard output.
      */
     public static void main(String[] args) {
-        if(args.length != 1) {
-            System.err.println("Usage: java Main file.jack OR dir");
+        int jobs = 1;
+        String cacheFile = null;
+        boolean stats = false;
+        boolean allErrors = false;
+        boolean split = false;
+        boolean project = false;
+        ResultWriter.Format format = ResultWriter.Format.TEXT;
+        String outputFile = null;
+        String source = null;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--jobs") && i + 1 < args.length) {
+                try {
+                    jobs = Integer.parseInt(args[++i]);
+                }
+                catch(NumberFormatException ex) {
+                    jobs = 0;
+                }
+                if(jobs < 1) {
+                    System.err.println(USAGE);
+                    return;
+                }
+            }
+            else if(args[i].equals("--cache") && i + 1 < args.length) {
+                cacheFile = args[++i];
+            }
+            else if(args[i].equals("--stats")) {
+                stats = true;
+            }
+            else if(args[i].equals("--all-errors")) {
+                allErrors = true;
+            }
+            else if(args[i].equals("--split")) {
+                split = true;
+            }
+            else if(args[i].equals("--project")) {
+                project = true;
+            }
+            else if(args[i].equals("--output") && i + 1 < args.length) {
+                format = ResultWriter.Format.named(args[++i]);
+                if(format == null) {
+                    System.err.println(USAGE);
+                    return;
+                }
+            }
+            else if(args[i].equals("--output-file") && i + 1 < args.length) {
+                outputFile = args[++i];
+            }
+            else if(source == null && !args[i].startsWith("--")) {
+                source = args[i];
+            }
+            else {
+                System.err.println(USAGE);
+                return;
+            }
+        }
+        if(source == null) {
+            System.err.println(USAGE);
         }
         else {
-            File arg = new File(args[0]);
+            File arg = new File(source);
             if(arg.exists() && arg.canRead()) {
-                String srcName = arg.getName();
-                if(arg.isDirectory() || srcName.endsWith(JACK_SUFFIX)) {
-                    List<File> jackFiles = new ArrayList<>();
-                    if(arg.isDirectory()) {
-                        File[] fileList = arg.listFiles();
-                        for(File f : fileList) {
-                            if(f.canRead() && f.getName().endsWith(JACK_SUFFIX)) {
-                                jackFiles.add(f);
-                            }
-                        }
+                Iterable<File> jackFiles = jackFiles(arg);
+                if(jackFiles != null) {
+                    ResultCache cache = null;
+                    if(cacheFile != null) {
+                        cache = new ResultCache(Paths.get(cacheFile), ResultCache.DEFAULT_CAPACITY);
                     }
-                    else {
-                        jackFiles.add(arg);
+                    ResultWriter out;
+                    try {
+                        out = outputFile == null ? new ResultWriter(format)
+                                                 : new ResultWriter(Paths.get(outputFile), format);
                     }
-                    if(!jackFiles.isEmpty()) {
-                        parse(jackFiles);
+                    catch(IOException ex) {
+                        System.err.println("Unable to open " + outputFile + ": " + ex.getMessage());
+                        return;
                     }
-                    else {
+                    ParseStats parseStats = null;
+                    if(stats) {
+                        ParseStats.enable();
+                        parseStats = new ParseStats();
+                    }
+                    ParseOptions options = new ParseOptions().jobs(jobs).cache(cache)
+                            .stats(parseStats).allErrors(allErrors).split(split).project(project);
+                    int count = parse(jackFiles, options, out);
+                    out.close();
+                    if(count == 0) {
                         System.err.println("No Jack files to translate.");
                     }
+                    if(out.getError() != null) {
+                        System.err.println("Unable to write " + (outputFile == null ? "the results" : outputFile)
+                                           + ": " + out.getError().getMessage());
+                    }
+                    if(cache != null) {
+                        try {
+                            cache.save();
+                        }
+                        catch(IOException ex) {
+                            System.err.println("Unable to save the cache: " + ex.getMessage());
+                        }
+                        System.err.println(cache.getStatistics());
+                    }
+                    if(parseStats != null) {
+                        parseStats.report(System.err);
+                    }
+                    if(out.getError() != null) {
+                        System.exit(1);
+                    }
                 }
                 else {
                     System.err.println(arg.getName() + " is neither a Jack file nor a directory.");
@@ -58,33 +170,331 @@ public class Main {
     }
 
     /**
-     * Parse the given list of source files.
+     * Find the Jack files named by an argument.
+     * @param arg A Jack file or a directory tree of Jack files.
+     * @return the files, or null if arg is neither a Jack file nor a directory.
+     */
+    static Iterable<File> jackFiles(File arg)
+    {
+        if(arg.isDirectory()) {
+            return new SourceDiscovery(arg.toPath(), JACK_SUFFIX);
+        }
+        else if(arg.getName().endsWith(JACK_SUFFIX)) {
+            return List.of(arg);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Parse the given source files.
      * For each file output the last part of the name of the source
      * file and one of either:
      *     + OK
      *     + Error line N
      * where N is the number of the line most recently read by the tokenizer.
+     * Results are delivered in the order the files are supplied, however
+     * many files are parsed at a time. Parsing starts with the first file
+     * supplied, so the files may still be being found.
+     * All the files share one pool of identifier names.
+     * @param jackFiles The files to be translated.
+     * @param jobs The number of files to parse concurrently.
+     * @param out Where to deliver the result for each file.
+     * @return the number of files supplied.
+     */
+    public static int parse(Iterable<File> jackFiles, int jobs, Consumer<ParseResult> out)
+    {
+        return parse(jackFiles, new ParseOptions().jobs(jobs), out);
+    }
+
+    /**
+     * Parse the given source files, as above, taking the result for
+     * any file whose content has not changed from the cache, and
+     * recording the results of the others there.
+     * @param jackFiles The files to be translated.
+     * @param jobs The number of files to parse concurrently.
+     * @param cache The results of earlier parses, or null.
+     * @param out Where to deliver the result for each file.
+     * @return the number of files supplied.
+     */
+    public static int parse(Iterable<File> jackFiles, int jobs, ResultCache cache,
+                            Consumer<ParseResult> out)
+    {
+        return parse(jackFiles, new ParseOptions().jobs(jobs).cache(cache), out);
+    }
+
+    /**
+     * Parse the given source files, as above, with the given options.
+     * With the project option, the declarations of all the files are
+     * collected first, then each file is parsed and checked against them.
      * @param jackFiles The files to be translated.
+     * @param options How to parse them.
+     * @param out Where to deliver the result for each file.
+     * @return the number of files supplied.
      */
-    private static void parse(List<File> jackFiles) 
+    public static int parse(Iterable<File> jackFiles, ParseOptions options, Consumer<ParseResult> out)
     {
-        for(File src : jackFiles) {
-            String fullName = src.getAbsolutePath();
-            Tokenizer lex = null;
-            try(BufferedReader reader = new BufferedReader(new FileReader(src))) {
-                System.out.print(src.getName());
-                lex = new Tokenizer(reader);
-                Parser parser = new Parser(lex);
-                parser.parseClass();
-                // If we reach here, it is assumed that the parse was successful.
-                System.out.println(" OK");
-                lex = null;
-            }
-            catch(Exception ex) {
-                if(lex != null) {
-                    System.out.println(String.format(" Error line %d", lex.getLineNumber()));
+        int count = 0;
+        int jobs = options.getJobs();
+        IdentifierPool pool = new IdentifierPool();
+        ProjectIndex index = null;
+        if(options.isProject()) {
+            List<File> files = new ArrayList<>();
+            List<Path> paths = new ArrayList<>();
+            for(File src : jackFiles) {
+                files.add(src);
+                try {
+                    paths.add(src.toPath());
+                }
+                catch(InvalidPathException ex) {
+                    // The file is skipped when it is parsed.
+                }
+            }
+            jackFiles = files;
+            index = ProjectIndex.build(paths, pool, jobs);
+        }
+        ProjectIndex project = index;
+        if(jobs <= 1) {
+            for(File src : jackFiles) {
+                deliver(parse(src, pool, index, options), out);
+                count++;
+            }
+            return count;
+        }
+        ForkJoinPool workers = new ForkJoinPool(jobs);
+        try {
+            // Results not yet delivered, in file order.
+            Deque<Future<ParseResult>> pending = new ArrayDeque<>();
+            for(File src : jackFiles) {
+                pending.add(workers.submit(() -> parse(src, pool, project, options)));
+                count++;
+                // Deliver what is ready, and limit how far ahead parsing runs.
+                while(!pending.isEmpty() &&
+                        (pending.peek().isDone() || pending.size() > jobs * MAX_PENDING_PER_JOB)) {
+                    deliver(pending.remove().get(), out);
                 }
             }
+            while(!pending.isEmpty()) {
+                deliver(pending.remove().get(), out);
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Parse a single source file, unless its result is cached,
+     * and record it as a Flight Recorder event if it is measured.
+     * Without --stats, no Flight Recorder class is loaded.
+     * @param src The file to be parsed.
+     * @param pool The pool of identifier names.
+     * @param index The classes of the project, or null.
+     * @param options How to parse it.
+     * @return the outcome, or null if the file could not be read.
+     */
+    private static ParseResult parse(File src, IdentifierPool pool, ProjectIndex index,
+                                     ParseOptions options)
+    {
+        if(!ParseStats.recording()) {
+            return parseUncached(src, pool, index, options);
+        }
+        FileParsedEvent event = new FileParsedEvent();
+        event.begin();
+        ParseResult result = parseUncached(src, pool, index, options);
+        event.end();
+        if(result != null && event.shouldCommit()) {
+            event.file = result.name;
+            event.bytes = src.length();
+            event.ok = result.ok;
+            event.errorLine = result.errorLine;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Parse a single source file, unless its result is cached.
+     * The cache does not hold the errors of a file, so when they are
+     * all wanted a file that failed is parsed again.
+     * @param src The file to be parsed.
+     * @param pool The pool of identifier names.
+     * @param index The classes of the project, or null.
+     * @param options How to parse it.
+     * @return the outcome, or null if the file could not be read.
+     */
+    private static ParseResult parseUncached(File src, IdentifierPool pool, ProjectIndex index,
+                                             ParseOptions options)
+    {
+        ResultCache cache = options.getCache();
+        // The result of a file in a project depends on the other files.
+        if(cache == null || index != null) {
+            return parseFile(src, pool, index, options);
+        }
+        ByteBuffer key;
+        try {
+            key = cache.key(src.toPath());
+        }
+        catch(IOException | InvalidPathException ex) {
+            return parseFile(src, pool, index, options);
+        }
+        ParseResult result = cache.get(key, src.getName());
+        if(result == null) {
+            result = parseFile(src, pool, index, options);
+            if(result != null) {
+                cache.put(key, result);
+            }
+        }
+        else if(!result.ok && options.isAllErrors()) {
+            result = parseFile(src, pool, index, options);
+        }
+        return result;
+    }
+
+    /**
+     * Parse a single source file, timing its phases apart if the
+     * measurements are wanted.
+     * @param src The file to be parsed.
+     * @param pool The pool of identifier names.
+     * @param index The classes of the project, or null.
+     * @param options How to parse it.
+     * @return the outcome, or null if the file could not be read.
+     */
+    private static ParseResult parseFile(File src, IdentifierPool pool, ProjectIndex index,
+                                         ParseOptions options)
+    {
+        if(options.getStats() == null) {
+            return parse(src, pool, options.isAllErrors(), options.isSplit(), index);
+        }
+        return parseInPhases(src, pool, index, options);
+    }
+
+    /**
+     * Parse a single source file with the Tokenizer, Parser and
+     * SymbolTable of this thread; see BatchParser.
+     * @param src The file to be parsed.
+     * @param pool The pool of identifier names.
+     * @param allErrors Whether to report all the errors, or only the first.
+     * @param split Whether to parse the subroutines of a large file in parallel.
+     * @param index The classes of the project, or null.
+     * @return the outcome, or null if the file could not be read.
+     */
+    private static ParseResult parse(File src, IdentifierPool pool, boolean allErrors, boolean split,
+                                     ProjectIndex index)
+    {
+        try {
+            return BatchParser.parse(src.toPath(), pool, allErrors, split, index);
+        }
+        catch(IOException | InvalidPathException ex) {
+            // Such as a name the file system's encoding cannot hold.
+            return null;
+        }
+    }
+
+    /**
+     * Parse a single source file as above, but read, lex and parse it
+     * one after the other, measuring each phase; see ParseStats.
+     * A file that is streamed or split is parsed as above, since it
+     * cannot be lexed whole first without changing how it is parsed,
+     * and timed as a single parse phase. The outcome is the same.
+     * @param src The file to be parsed.
+     * @param pool The pool of identifier names.
+     * @param index The classes of the project, or null.
+     * @param options How to parse it.
+     * @return the outcome, or null if the file could not be read.
+     */
+    private static ParseResult parseInPhases(File src, IdentifierPool pool, ProjectIndex index,
+                                             ParseOptions options)
+    {
+        long start = System.nanoTime();
+        FileStats file = new FileStats(src.getName());
+        long size = src.length();
+        if(size > BatchParser.STREAMED_SIZE || BatchParser.splits(size, options.isAllErrors(), options.isSplit())) {
+            file.begin();
+            ParseResult result = parse(src, pool, options.isAllErrors(), options.isSplit(), index);
+            if(result == null) {
+                return null;
+            }
+            file.bytes = size;
+            file.tokens = Math.max(result.tokens, 0);
+            file.ok = result.ok;
+            file.end(Phase.PARSE, file.bytes, file.tokens);
+            options.getStats().add(file);
+            return result;
+        }
+        CharSequence text;
+        Tokenizer lex;
+        file.begin();
+        try {
+            text = Tokenizer.read(src.toPath());
+            lex = new Tokenizer(text, pool);
+        }
+        catch(Exception ex) {
+            return null;
+        }
+        file.bytes = text.length();
+        file.end(Phase.READ, file.bytes, 0);
+
+        file.begin();
+        TokenStream tokens = TokenStream.lex(lex);
+        file.tokens = tokens.size();
+        file.lines = lex.getLineNumber();
+        file.end(Phase.LEX, file.bytes, file.tokens);
+
+        file.begin();
+        RecordingSymbolTable symbols = new RecordingSymbolTable();
+        Parser parser = new Parser(tokens, symbols, null);
+        parser.useIndex(index, src.toPath().toString());
+        ParseResult result = BatchParser.parse(parser, tokens, src.getName(),
+                                               options.isAllErrors(), start);
+        file.ok = result.ok;
+        file.end(Phase.PARSE, file.bytes, file.tokens);
+
+        file.begin();
+        ParseStats.consume(symbols.replay());
+        file.end(Phase.SYMBOLS, 0, symbols.getOperations());
+
+        if(options.getStats() != null) {
+            options.getStats().add(file);
+        }
+        return result;
+    }
+
+    /**
+     * Format a result as it is output: the result, followed by any
+     * errors found, one per indented line.
+     * @param result The result.
+     * @return the formatted result, without a final line separator.
+     */
+    static String format(ParseResult result)
+    {
+        if(result.diagnostics == null || result.diagnostics.isEmpty()) {
+            return result.toString();
+        }
+        StringBuilder s = new StringBuilder(result.toString());
+        for(Diagnostic d : result.diagnostics) {
+            s.append(System.lineSeparator()).append("    ").append(d);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Pass on a result, if there is one.
+     * @param result The result, or null.
+     * @param out Where to deliver the result.
+     */
+    private static void deliver(ParseResult result, Consumer<ParseResult> out)
+    {
+        if(result != null) {
+            out.accept(result);
         }
     }
-}
\ No newline at end of file
+}
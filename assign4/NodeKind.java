@@ -0,0 +1,51 @@
+package assign4;
+
+/**
+ * The kinds of node in a SyntaxTree, with the main token of each
+ * and its children.
+ */
+public enum NodeKind {
+    // The class name; CLASS_VAR_DEC *, SUBROUTINE_DEC *
+    CLASS,
+    // STATIC or FIELD, followed by the type; NAME +
+    CLASS_VAR_DEC,
+    // The subroutine name, preceded by the return type; PARAMETER *, VAR_DEC *, statement *
+    SUBROUTINE_DEC,
+    // The parameter name, preceded by its type; none
+    PARAMETER,
+    // VAR, followed by the type; NAME +
+    VAR_DEC,
+    // A declared name; none
+    NAME,
+    // The variable name; EXPRESSION for the index, if any, then EXPRESSION
+    LET,
+    // IF; EXPRESSION, BLOCK, and BLOCK for the else part, if any
+    IF,
+    // WHILE; EXPRESSION, BLOCK
+    WHILE,
+    // DO; CALL
+    DO,
+    // RETURN; EXPRESSION, if any
+    RETURN,
+    // The opening bracket; statement *
+    BLOCK,
+    // The first token; term, then OPERATOR and term in turn.
+    // Jack operators have no precedence, so an expression is flat.
+    // The parser accepts an empty term, so an expression may have no
+    // children and cover no tokens, when its token is the one after it.
+    EXPRESSION,
+    // The operator; none
+    OPERATOR,
+    // The constant; none
+    INT_CONST,
+    STRING_CONST,
+    KEYWORD_CONSTANT,
+    // The variable name; none
+    VARIABLE,
+    // The array name; EXPRESSION for the index
+    ARRAY_ELEMENT,
+    // The name of the subroutine, or of its class or object; EXPRESSION per argument
+    CALL,
+    // The operator; term
+    UNARY
+}
@@ -0,0 +1,164 @@
+package assign4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A thin client of a ParseServer, which outputs what Main would.
+ *
+ * Usage: java assign4.ParseClient [--socket PATH | --port N] [--all-errors]
+ *            file.jack OR dir OR - OR --stats OR --stop
+ * A file or directory is parsed by the server from its absolute path.
+ * With -, the standard input is sent to the server and parsed as the
+ * source of a single class.
+ */
+public class ParseClient implements Closeable {
+    private static final String USAGE =
+        "Usage: java ParseClient [--socket PATH | --port N] [--all-errors] " +
+        "file.jack OR dir OR - OR --stats OR --stop";
+    // The name given to source read from the standard input.
+    private static final String STDIN_NAME = "stdin.jack";
+    private static final String ERROR = "ERROR ";
+
+    private final SocketChannel channel;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Connect to a server.
+     * @param address The address it is listening on.
+     * @throws IOException if it cannot be reached.
+     */
+    public ParseClient(SocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        in = new BufferedInputStream(Channels.newInputStream(channel));
+        out = new BufferedOutputStream(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * @param args The request, optionally preceded by --socket PATH or
+     *             --port N to give the server's address, and by
+     *             --all-errors to list every error found in a file.
+     */
+    public static void main(String[] args) {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                      ParseServer.DEFAULT_PORT);
+        boolean allErrors = false;
+        String request = null;
+        for(int i = 0; i < args.length; i++) {
+            SocketAddress a = i + 1 < args.length ? ParseServer.address(args[i], args[i + 1]) : null;
+            if(a != null) {
+                address = a;
+                i++;
+            }
+            else if(args[i].equals("--all-errors")) {
+                allErrors = true;
+            }
+            else if(request == null && (args[i].equals("--stats") || args[i].equals("--stop"))) {
+                request = args[i].substring(2).toUpperCase(Locale.ROOT);
+            }
+            else if(request == null && (args[i].equals("-") || !args[i].startsWith("--"))) {
+                request = args[i];
+            }
+            else {
+                System.err.println(USAGE);
+                return;
+            }
+        }
+        if(request == null) {
+            System.err.println(USAGE);
+            return;
+        }
+        // Requests are joined rather than concatenated, since setting up
+        // string concatenation costs more than the rest of a request.
+        String flags = allErrors ? " --all-errors " : " ";
+        try(ParseClient client = new ParseClient(address)) {
+            List<String> response;
+            if(request.equals("STATS") || request.equals("STOP")) {
+                response = client.request(request, null);
+            }
+            else if(request.equals("-")) {
+                byte[] source = System.in.readAllBytes();
+                String header = String.join(flags, "SOURCE",
+                                            String.join(" ", STDIN_NAME, String.valueOf(source.length)));
+                response = client.request(header, source);
+            }
+            else {
+                String path = new File(request).getAbsolutePath();
+                response = client.request(String.join(flags, "PARSE", path), null);
+            }
+            for(String line : response) {
+                if(line.startsWith(ERROR)) {
+                    System.err.println(line.substring(ERROR.length()));
+                }
+                else {
+                    System.out.println(line);
+                }
+            }
+        }
+        catch(IOException ex) {
+            System.err.println("Unable to reach the server at " + address + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Make a request and wait for the whole of the response.
+     * @param request The request line; see ParseServer.
+     * @param body The bytes that follow the request line, or null.
+     * @return the lines of the response, without the final empty line.
+     * @throws IOException if the server cannot be reached or goes away.
+     */
+    public List<String> request(String request, byte[] body) throws IOException {
+        out.write(request.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        if(body != null) {
+            out.write(body);
+        }
+        out.flush();
+        List<String> lines = new ArrayList<>();
+        String line;
+        while(!(line = readLine()).isEmpty()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Read a line of the response, without its line separator.
+     * @throws EOFException if the response ends part way through.
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b == -1) {
+                throw new EOFException("The server closed the connection");
+            }
+            if(b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,98 @@
+package assign4;
+
+/**
+ * How Main.parse parses a set of files. Each option is set by a
+ * method that returns the options, so they can be chained:
+ *     new ParseOptions().jobs(4).allErrors(true)
+ */
+public class ParseOptions {
+    private int jobs = 1;
+    private ResultCache cache;
+    private ParseStats stats;
+    private boolean allErrors;
+    private boolean split;
+    private boolean project;
+
+    /**
+     * @param jobs The number of files to parse concurrently; 1 by default.
+     * @return these options.
+     */
+    public ParseOptions jobs(int jobs) {
+        this.jobs = jobs;
+        return this;
+    }
+
+    /**
+     * @param cache The results of earlier parses, or null for none.
+     * @return these options.
+     */
+    public ParseOptions cache(ResultCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * @param stats Where to add measurements of the phases of parsing
+     *              each file, or null for none.
+     * @return these options.
+     */
+    public ParseOptions stats(ParseStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * @param allErrors Whether to recover from errors and report all
+     *                  those found, rather than only the first.
+     * @return these options.
+     */
+    public ParseOptions allErrors(boolean allErrors) {
+        this.allErrors = allErrors;
+        return this;
+    }
+
+    /**
+     * @param split Whether to parse the subroutines of each large file
+     *              in parallel, when only the first error is wanted.
+     * @return these options.
+     */
+    public ParseOptions split(boolean split) {
+        this.split = split;
+        return this;
+    }
+
+    /**
+     * @param project Whether to check each file against the others, as
+     *                the classes of one project; see ProjectIndex.
+     *                The results of such a parse are not cached.
+     * @return these options.
+     */
+    public ParseOptions project(boolean project) {
+        this.project = project;
+        return this;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    public ParseStats getStats() {
+        return stats;
+    }
+
+    public boolean isAllErrors() {
+        return allErrors;
+    }
+
+    public boolean isSplit() {
+        return split;
+    }
+
+    public boolean isProject() {
+        return project;
+    }
+}
@@ -0,0 +1,41 @@
+package assign4;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for one phase of the parse of a source
+ * file: reading, lexing, parsing or a replay of the symbol table work
+ * of parsing. Its duration is the time the phase took.
+ *
+ * Phases are only timed apart, and this event recorded, when --stats
+ * is given; see ParseStats.
+ */
+@Name("assign4.ParsePhase")
+@Label("Parse Phase")
+@Category({ "Jack", "Parser" })
+@Description("One phase of the parse of a Jack source file")
+@StackTrace(false)
+public class ParsePhaseEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
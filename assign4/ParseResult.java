@@ -0,0 +1,87 @@
+package assign4;
+
+import java.util.List;
+
+/**
+ * The outcome of parsing a single source file.
+ */
+public class ParseResult {
+    // The last part of the name of the source file.
+    public final String name;
+    // Whether the parse succeeded.
+    public final boolean ok;
+    // The tokenizer line number at the point of failure.
+    public final int errorLine;
+    // The class-level names declared by the file, or null if not known.
+    public final List<ClassSymbol> symbols;
+    // Every error found, in order, or null if only the first was looked for.
+    public final List<Diagnostic> diagnostics;
+    // The number of tokens read, or -1 if not known.
+    public final int tokens;
+    // The time taken to read and parse the file in nanoseconds,
+    // or -1 if not known, as for a result taken from a cache.
+    public final long nanos;
+
+    /**
+     * @param name The last part of the name of the source file.
+     * @param ok Whether the parse succeeded.
+     * @param errorLine The line number at the point of failure, if any.
+     */
+    public ParseResult(String name, boolean ok, int errorLine) {
+        this(name, ok, errorLine, null);
+    }
+
+    /**
+     * @param name The last part of the name of the source file.
+     * @param ok Whether the parse succeeded.
+     * @param errorLine The line number at the point of failure, if any.
+     * @param symbols The class-level names declared by the file, or null.
+     */
+    public ParseResult(String name, boolean ok, int errorLine, List<ClassSymbol> symbols) {
+        this(name, ok, errorLine, symbols, null);
+    }
+
+    /**
+     * @param name The last part of the name of the source file.
+     * @param ok Whether the parse succeeded.
+     * @param errorLine The line number at the point of the first failure, if any.
+     * @param symbols The class-level names declared by the file, or null.
+     * @param diagnostics Every error found, or null.
+     */
+    public ParseResult(String name, boolean ok, int errorLine, List<ClassSymbol> symbols,
+                       List<Diagnostic> diagnostics) {
+        this(name, ok, errorLine, symbols, diagnostics, -1, -1);
+    }
+
+    /**
+     * @param name The last part of the name of the source file.
+     * @param ok Whether the parse succeeded.
+     * @param errorLine The line number at the point of the first failure, if any.
+     * @param symbols The class-level names declared by the file, or null.
+     * @param diagnostics Every error found, or null.
+     * @param tokens The number of tokens read, or -1.
+     * @param nanos The time taken to read and parse the file, or -1.
+     */
+    public ParseResult(String name, boolean ok, int errorLine, List<ClassSymbol> symbols,
+                       List<Diagnostic> diagnostics, int tokens, long nanos) {
+        this.name = name;
+        this.ok = ok;
+        this.errorLine = errorLine;
+        this.symbols = symbols;
+        this.diagnostics = diagnostics;
+        this.tokens = tokens;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Format the result as either
+     *     Name OK
+     * or
+     *     Name Error line N
+     * @return the formatted result.
+     */
+    @Override
+    public String toString() {
+        return ok ? name + " OK" : name + " Error line " + errorLine;
+    }
+}
@@ -0,0 +1,429 @@
+package assign4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parser that stays resident and serves requests over a local socket,
+ * so that a run does not pay for starting a JVM and for a cold,
+ * interpreted Tokenizer and Parser each time. Compiled code, and the
+ * result cache if there is one, stay warm between requests.
+ *
+ * Each connection is served by a thread of its own, and may make any
+ * number of requests, one after another. A request is one line:
+ *     PARSE [--all-errors] path
+ *         parse a Jack file or a directory tree of Jack files, which
+ *         must be visible to the server, so path should be absolute
+ *     SOURCE [--all-errors] name length
+ *         parse the source text in the length bytes that follow
+ *     STATS
+ *         summarise the latency of recent requests
+ *     STOP
+ *         shut the server down
+ * The response is the lines that Main would output, followed by an
+ * empty line. A request that cannot be served is answered with a line
+ * starting ERROR, followed by an empty line. See ParseClient.
+ *
+ * Usage: java assign4.ParseServer [--socket PATH | --port N] [--jobs N] [--cache FILE]
+ * By default the server listens on DEFAULT_PORT of the loopback address.
+ */
+public class ParseServer implements Closeable {
+    public static final int DEFAULT_PORT = 7218;
+    private static final String USAGE =
+        "Usage: java ParseServer [--socket PATH | --port N] [--jobs N] [--cache FILE]";
+    // The largest source text accepted by a SOURCE request.
+    private static final int MAX_SOURCE_LENGTH = 64 * 1024 * 1024;
+    // How many of the most recent request latencies are kept.
+    private static final int RECENT_REQUESTS = 8192;
+
+    /**
+     * What to do after a request.
+     */
+    private enum Outcome {
+        // Wait for the next request on the connection.
+        CONTINUE,
+        // Close the connection.
+        HANG_UP,
+        // Shut the server down.
+        STOP
+    }
+
+    private final ServerSocketChannel channel;
+    private final SocketAddress address;
+    private final int jobs;
+    private final ResultCache cache;
+    private final ExecutorService connections;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // The latencies of recent requests, in nanoseconds, in a ring.
+    private final long[] latencies = new long[RECENT_REQUESTS];
+    private long requests;
+
+    /**
+     * Start listening for connections.
+     * @param address A UnixDomainSocketAddress, or the address and port
+     *                to listen on; port 0 picks a free port.
+     * @param jobs The number of files each request may parse concurrently.
+     * @param cache The results of earlier parses, or null.
+     * @throws IOException if the address cannot be bound.
+     */
+    public ParseServer(SocketAddress address, int jobs, ResultCache cache) throws IOException {
+        if(address instanceof UnixDomainSocketAddress) {
+            // A socket file left by a server that did not shut down.
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        }
+        else {
+            channel = ServerSocketChannel.open();
+        }
+        channel.bind(address);
+        this.address = channel.getLocalAddress();
+        this.jobs = jobs;
+        this.cache = cache;
+        AtomicInteger threads = new AtomicInteger();
+        connections = Executors.newCachedThreadPool(task -> {
+            Thread t = new Thread(task, "parse-server-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param args --socket PATH to listen on a Unix domain socket, or
+     *             --port N to listen on port N of the loopback address;
+     *             --jobs N to parse N files of a request at a time,
+     *             and --cache FILE to reuse the results of earlier runs
+     *             for files that have not changed.
+     */
+    public static void main(String[] args) {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+        int jobs = 1;
+        String cacheFile = null;
+        for(int i = 0; i < args.length; i++) {
+            SocketAddress a = i + 1 < args.length ? address(args[i], args[i + 1]) : null;
+            if(a != null) {
+                address = a;
+                i++;
+            }
+            else if(args[i].equals("--jobs") && i + 1 < args.length) {
+                try {
+                    jobs = Integer.parseInt(args[++i]);
+                }
+                catch(NumberFormatException ex) {
+                    jobs = 0;
+                }
+                if(jobs < 1) {
+                    System.err.println(USAGE);
+                    return;
+                }
+            }
+            else if(args[i].equals("--cache") && i + 1 < args.length) {
+                cacheFile = args[++i];
+            }
+            else {
+                System.err.println(USAGE);
+                return;
+            }
+        }
+        ResultCache cache = null;
+        if(cacheFile != null) {
+            cache = new ResultCache(Paths.get(cacheFile), ResultCache.DEFAULT_CAPACITY);
+        }
+        try(ParseServer server = new ParseServer(address, jobs, cache)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            System.err.println("Listening on " + server.getAddress());
+            server.serve();
+        }
+        catch(IOException ex) {
+            System.err.println("Unable to serve on " + address + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * The address given by a command-line option of the server or client.
+     * @param option The option, which is --socket or --port.
+     * @param value Its value.
+     * @return the address, or null if the option is neither or the
+     *         port is not a number.
+     */
+    static SocketAddress address(String option, String value) {
+        if(option.equals("--socket")) {
+            return UnixDomainSocketAddress.of(value);
+        }
+        else if(option.equals("--port")) {
+            try {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value));
+            }
+            catch(IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * @return the address the server is listening on.
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Accept connections until the server is closed or a STOP request
+     * is served; after a STOP, the caller should close the server.
+     * @throws IOException if a connection cannot be accepted.
+     */
+    public void serve() throws IOException {
+        try {
+            while(true) {
+                SocketChannel connection = channel.accept();
+                connections.execute(() -> serve(connection));
+            }
+        }
+        catch(ClosedChannelException ex) {
+            // Closed by a STOP request or on shutdown.
+        }
+    }
+
+    /**
+     * Stop listening, and save the cache if there is one.
+     * Requests already being served are then abandoned, and the
+     * threads serving them interrupted, so this should not be called
+     * from one of those threads.
+     */
+    @Override
+    public void close() {
+        if(closed.getAndSet(true)) {
+            return;
+        }
+        try {
+            channel.close();
+            if(address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+        catch(IOException ex) {
+            System.err.println("Unable to close " + address + ": " + ex.getMessage());
+        }
+        if(cache != null) {
+            try {
+                cache.save();
+            }
+            catch(IOException ex) {
+                System.err.println("Unable to save the cache: " + ex.getMessage());
+            }
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * Stop accepting connections, for a STOP request, so that serve()
+     * returns and the server is closed by the thread that called it.
+     */
+    private void stopListening() {
+        try {
+            channel.close();
+        }
+        catch(IOException ex) {
+            System.err.println("Unable to close " + address + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Serve the requests made over a connection until it is closed.
+     * @param connection The connection.
+     */
+    private void serve(SocketChannel connection) {
+        try(connection) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(connection));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new BufferedOutputStream(Channels.newOutputStream(connection)), StandardCharsets.UTF_8));
+            String request;
+            while((request = readLine(in)) != null) {
+                long start = System.nanoTime();
+                Outcome outcome = serve(request, in, out);
+                out.print('\n');
+                out.flush();
+                if(out.checkError()) {
+                    return;
+                }
+                record(System.nanoTime() - start);
+                if(outcome == Outcome.STOP) {
+                    stopListening();
+                }
+                if(outcome != Outcome.CONTINUE) {
+                    return;
+                }
+            }
+        }
+        catch(IOException ex) {
+            // The client went away.
+        }
+    }
+
+    /**
+     * Serve a single request, writing all of its response but the
+     * final empty line.
+     * @param request The request line.
+     * @param in The rest of the input from the client.
+     * @param out Where to write the response.
+     * @return what to do next.
+     * @throws IOException if the input cannot be read.
+     */
+    private Outcome serve(String request, InputStream in, PrintWriter out) throws IOException {
+        String[] words = request.trim().split(" +");
+        String command = words[0].toUpperCase(Locale.ROOT);
+        boolean allErrors = words.length > 1 && words[1].equals("--all-errors");
+        int first = allErrors ? 2 : 1;
+        switch(command) {
+            case "PARSE" -> {
+                if(words.length <= first) {
+                    error(out, "PARSE needs a path");
+                }
+                else {
+                    // The path may contain spaces.
+                    String path = request.trim().split(" +", first + 1)[first];
+                    parse(new File(path), allErrors, out);
+                }
+            }
+            case "SOURCE" -> {
+                int length = -1;
+                if(words.length == first + 2) {
+                    try {
+                        length = Integer.parseInt(words[first + 1]);
+                    }
+                    catch(NumberFormatException ex) {
+                        length = -1;
+                    }
+                }
+                if(length < 0 || length > MAX_SOURCE_LENGTH) {
+                    error(out, "SOURCE needs a name and a length of at most " + MAX_SOURCE_LENGTH);
+                    // The rest of the input cannot be made sense of.
+                    return Outcome.HANG_UP;
+                }
+                byte[] source = in.readNBytes(length);
+                if(source.length < length) {
+                    throw new EOFException();
+                }
+                // Decoded as a file would be by Tokenizer.read.
+                String text = new String(source, Charset.defaultCharset());
+                out.print(Main.format(new BatchParser(1, allErrors).parse(words[first], text)));
+                out.print('\n');
+            }
+            case "STATS" -> out.print(getStatistics() + '\n');
+            case "STOP" -> {
+                return Outcome.STOP;
+            }
+            default -> error(out, "Unknown request: " + words[0]);
+        }
+        return Outcome.CONTINUE;
+    }
+
+    /**
+     * Parse a Jack file or a directory tree of them, as Main does.
+     */
+    private void parse(File arg, boolean allErrors, PrintWriter out) {
+        if(!arg.exists() || !arg.canRead()) {
+            error(out, arg.getName() + " not found.");
+            return;
+        }
+        Iterable<File> jackFiles = Main.jackFiles(arg);
+        if(jackFiles == null) {
+            error(out, arg.getName() + " is neither a Jack file nor a directory.");
+            return;
+        }
+        ParseOptions options = new ParseOptions().jobs(jobs).cache(cache).allErrors(allErrors);
+        int count = Main.parse(jackFiles, options, result -> {
+            out.print(Main.format(result));
+            out.print('\n');
+        });
+        if(count == 0) {
+            error(out, "No Jack files to translate.");
+        }
+    }
+
+    private static void error(PrintWriter out, String message) {
+        out.print("ERROR " + message + '\n');
+    }
+
+    /**
+     * Read a line of the request, without its line separator.
+     * @return the line, or null at the end of the input.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b == -1) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            if(b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Record the latency of a request.
+     * @param nanos The time taken to serve it.
+     */
+    private synchronized void record(long nanos) {
+        latencies[(int) (requests % RECENT_REQUESTS)] = nanos;
+        requests++;
+    }
+
+    /**
+     * @return a summary of the number of requests served and the
+     *         latency of the most recent of them.
+     */
+    public synchronized String getStatistics() {
+        int n = (int) Math.min(requests, RECENT_REQUESTS);
+        if(n == 0) {
+            return "0 requests";
+        }
+        long[] recent = Arrays.copyOf(latencies, n);
+        Arrays.sort(recent);
+        return String.format("%d requests; latency of the last %d: p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                             requests, n, percentile(recent, 50), percentile(recent, 99),
+                             recent[n - 1] / 1e6);
+    }
+
+    /**
+     * @return the given percentile of sorted latencies in milliseconds,
+     *         by nearest rank.
+     */
+    private static double percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
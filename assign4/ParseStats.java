@@ -0,0 +1,259 @@
+package assign4;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Measurements of the phases of parsing each source file, and a
+ * summary of them at the end of a run.
+ *
+ * With --stats, each file is read, lexed in full into a TokenStream
+ * and then parsed, instead of being lexed as it is parsed, so that
+ * each phase can be timed on its own; files that are lexed as they
+ * are read, or split, are parsed as usual and timed as a single parse
+ * phase, with no lines counted. The bytes allocated by the
+ * thread during each phase are counted as well. The symbol table
+ * operations made by the parse are recorded and replayed on a fresh
+ * table to time them, so the symbols phase is a replay estimate: it
+ * is part of the parse phase rather than in addition to it, and it
+ * leaves out the cost of recording the operations.
+ *
+ * With --stats, each phase of each file is also a ParsePhaseEvent,
+ * and each file a FileParsedEvent, for Flight Recorder. Without it,
+ * nothing here is reached and the event classes are never loaded.
+ */
+public class ParseStats {
+    /**
+     * The phases of parsing a file.
+     */
+    enum Phase {
+        // Opening and reading or mapping the file.
+        READ,
+        // Lexing the text into a TokenStream.
+        LEX,
+        // Parsing the tokens, including the symbol table work.
+        PARSE,
+        // An estimate of the symbol table work of the parse, made by
+        // replaying it on its own.
+        SYMBOLS;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    // Set by --stats; until it is, no Flight Recorder class is touched.
+    private static volatile boolean enabled;
+    // Stops the JIT removing work whose result is unused.
+    private static volatile long sink;
+
+    private final Queue<FileStats> files = new ConcurrentLinkedQueue<>();
+    private final long start = System.nanoTime();
+
+    /**
+     * Measure the files parsed from now on; called for --stats.
+     */
+    static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Flight Recorder is only started by a recording, from the command
+     * line or with jcmd, and the event classes are only loaded once it
+     * has been, and --stats given, since loading them is costly.
+     * @return true if events may be recorded.
+     */
+    static boolean recording() {
+        return enabled && FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Make a result count as used.
+     * @param value Any value derived from the result of the work.
+     */
+    static void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * Add the measurements of a file.
+     * @param file The measurements.
+     */
+    void add(FileStats file) {
+        files.add(file);
+    }
+
+    /**
+     * The measurements of one file, taken one phase at a time.
+     */
+    static class FileStats {
+        // Held here so that the management classes are only loaded
+        // once a file is measured.
+        private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private static final boolean COUNT_ALLOCATION =
+            THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled();
+
+        final String name;
+        final long[] nanos = new long[PHASES.length];
+        final long[] allocated = new long[PHASES.length];
+        long bytes;
+        int lines;
+        int tokens;
+        boolean ok;
+
+        private long phaseStart;
+        private long allocationStart;
+        private ParsePhaseEvent event;
+
+        /**
+         * @param name The last part of the name of the file.
+         */
+        FileStats(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Start timing a phase.
+         */
+        void begin() {
+            if(recording()) {
+                event = new ParsePhaseEvent();
+                event.begin();
+            }
+            allocationStart = allocatedBytes();
+            phaseStart = System.nanoTime();
+        }
+
+        /**
+         * Finish timing a phase.
+         * @param phase The phase.
+         * @param bytes The number of bytes it handled.
+         * @param tokens The number of tokens it handled.
+         */
+        void end(Phase phase, long bytes, int tokens) {
+            nanos[phase.ordinal()] = System.nanoTime() - phaseStart;
+            allocated[phase.ordinal()] = allocatedBytes() - allocationStart;
+            if(event != null) {
+                event.end();
+                if(event.shouldCommit()) {
+                    event.file = name;
+                    event.phase = phase.label;
+                    event.bytes = bytes;
+                    event.tokens = tokens;
+                    event.allocated = allocated[phase.ordinal()];
+                    event.commit();
+                }
+                event = null;
+            }
+        }
+
+        /**
+         * @return the time taken by the file, which excludes the
+         *         replay of its symbol table work.
+         */
+        long totalNanos() {
+            return nanos[Phase.READ.ordinal()] + nanos[Phase.LEX.ordinal()] + nanos[Phase.PARSE.ordinal()];
+        }
+
+        long totalAllocated() {
+            return allocated[Phase.READ.ordinal()] + allocated[Phase.LEX.ordinal()] +
+                allocated[Phase.PARSE.ordinal()];
+        }
+
+        private static long allocatedBytes() {
+            return COUNT_ALLOCATION ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+        }
+    }
+
+    /**
+     * Print a summary of the run: the totals of each phase, with its
+     * share of the time and its throughput, then percentiles of the
+     * time, size and allocation of the files.
+     * @param out Where to print the summary.
+     */
+    public void report(PrintStream out) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        List<FileStats> all = new ArrayList<>(files);
+        long bytes = 0;
+        long lines = 0;
+        long tokens = 0;
+        int failed = 0;
+        long[] nanos = new long[PHASES.length];
+        long[] allocated = new long[PHASES.length];
+        for(FileStats f : all) {
+            bytes += f.bytes;
+            lines += f.lines;
+            tokens += f.tokens;
+            if(!f.ok) {
+                failed++;
+            }
+            for(int p = 0; p < PHASES.length; p++) {
+                nanos[p] += f.nanos[p];
+                allocated[p] += f.allocated[p];
+            }
+        }
+        out.printf("Parsed %d files (%d failed): %d bytes, %d lines, %d tokens in %.2f s, %.0f files/s, %.2f MB/s%n",
+                   all.size(), failed, bytes, lines, tokens, seconds, all.size() / seconds, bytes / seconds / 1e6);
+        if(all.isEmpty()) {
+            return;
+        }
+
+        long total = nanos[Phase.READ.ordinal()] + nanos[Phase.LEX.ordinal()] + nanos[Phase.PARSE.ordinal()];
+        String format = "%-10s %10s %7s %9s %10s %10s %8s%n";
+        out.printf(format, "Phase", "time ms", "share", "MB/s", "Mtokens/s", "alloc MB", "B/token");
+        for(Phase phase : PHASES) {
+            int p = phase.ordinal();
+            double phaseSeconds = nanos[p] / 1e9;
+            out.printf(format, phase == Phase.SYMBOLS ? "  " + phase.label + "*" : phase.label,
+                       String.format("%.1f", nanos[p] / 1e6),
+                       String.format("%.1f%%", 100.0 * nanos[p] / total),
+                       String.format("%.2f", bytes / phaseSeconds / 1e6),
+                       String.format("%.2f", tokens / phaseSeconds / 1e6),
+                       FileStats.COUNT_ALLOCATION ? String.format("%.1f", allocated[p] / 1e6) : "-",
+                       FileStats.COUNT_ALLOCATION ? String.format("%.1f", (double) allocated[p] / tokens) : "-");
+        }
+        out.println("* replay estimate: the symbol table work of the parse, replayed on its own; part of parse");
+
+        format = "%-10s %10s %10s %10s %10s%n";
+        out.printf(format, "Per file", "p50", "p90", "p99", "max");
+        percentiles(out, format, "time ms", all, f -> f.totalNanos(), 1e6);
+        percentiles(out, format, "KB", all, f -> f.bytes, 1e3);
+        percentiles(out, format, "tokens", all, f -> f.tokens, 1);
+        if(FileStats.COUNT_ALLOCATION) {
+            percentiles(out, format, "alloc KB", all, f -> f.totalAllocated(), 1e3);
+        }
+    }
+
+    /**
+     * A measurement of a file.
+     */
+    private interface Measure {
+        long of(FileStats f);
+    }
+
+    private static void percentiles(PrintStream out, String format, String label, List<FileStats> files,
+                                    Measure measure, double scale) {
+        long[] values = new long[files.size()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = measure.of(files.get(i));
+        }
+        Arrays.sort(values);
+        out.printf(format, label, percentile(values, 50, scale), percentile(values, 90, scale),
+                   percentile(values, 99, scale), String.format("%.1f", values[values.length - 1] / scale));
+    }
+
+    /**
+     * @return the given percentile of sorted values, by nearest rank.
+     */
+    private static String percentile(long[] sorted, int percent, double scale) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return String.format("%.1f", sorted[Math.max(rank, 1) - 1] / scale);
+    }
+}
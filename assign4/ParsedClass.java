@@ -0,0 +1,101 @@
+package assign4;
+
+import tokenizer.TokenStream;
+
+/**
+ * The outcome of parsing a class held in memory, such as the text of
+ * an editor buffer, together with what is needed to parse the class
+ * again cheaply after an edit.
+ *
+ * Each time the parser is about to look for another subroutine
+ * declaration its whole state is the index of the current token and
+ * the class-level names defined so far. These checkpoints are kept, so
+ * that a later parse can resume at the last one before an edit and stop
+ * at the first one beyond it whose state matches. A ParsedClass is
+ * never changed once made; see Parser.reparse().
+ */
+public class ParsedClass {
+    // The tokens of the class.
+    final TokenStream tokens;
+    // The names defined when the parse finished. Only read, and
+    // only copied up to a checkpoint's mark.
+    final SymbolTable symbolTable;
+    // Index of the current token at each checkpoint, in order.
+    final int[] checkpoints;
+    // The mark of the symbol table at each checkpoint.
+    final int[] marks;
+    final int checkpointCount;
+    // Whether the parse succeeded.
+    final boolean ok;
+    // Index of the current token at the point of failure.
+    final int failure;
+    // The tokenizer line number at the point of failure.
+    final int errorLine;
+    // The number of subroutine declarations parsed to make this result.
+    final int subroutinesParsed;
+
+    ParsedClass(TokenStream tokens, SymbolTable symbolTable,
+                int[] checkpoints, int[] marks, int checkpointCount,
+                boolean ok, int failure, int errorLine, int subroutinesParsed)
+    {
+        this.tokens = tokens;
+        this.symbolTable = symbolTable;
+        this.checkpoints = checkpoints;
+        this.marks = marks;
+        this.checkpointCount = checkpointCount;
+        this.ok = ok;
+        this.failure = failure;
+        this.errorLine = errorLine;
+        this.subroutinesParsed = subroutinesParsed;
+    }
+
+    /**
+     * @return true if the class parsed successfully.
+     */
+    public boolean isOk()
+    {
+        return ok;
+    }
+
+    /**
+     * @return the line number at the point of failure, or 0 on success.
+     */
+    public int getErrorLine()
+    {
+        return errorLine;
+    }
+
+    /**
+     * @return the text that was parsed.
+     */
+    public CharSequence getText()
+    {
+        return tokens.text();
+    }
+
+    /**
+     * @return the tokens of the text.
+     */
+    public TokenStream getTokens()
+    {
+        return tokens;
+    }
+
+    /**
+     * @return the number of subroutine declarations that had to be
+     *         parsed to make this result, rather than being reused.
+     */
+    public int getSubroutinesParsed()
+    {
+        return subroutinesParsed;
+    }
+
+    /**
+     * @param name The name to report the result under.
+     * @return the outcome as a ParseResult.
+     */
+    public ParseResult toResult(String name)
+    {
+        return new ParseResult(name, ok, errorLine);
+    }
+}
@@ -1,11 +1,20 @@
 package assign4;
 
 import assign4.SymbolTable.Kind;
+import tokenizer.IdentifierPool;
 import tokenizer.Keyword;
 import tokenizer.Token;
+import tokenizer.TokenSource;
+import tokenizer.TokenStream;
 import tokenizer.Tokenizer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Parse a Jack source file.
@@ -14,18 +23,145 @@ import java.util.ArrayList;
  * @version 1.0
  */
 public class Parser {
-    // The tokenizer.
-    private final Tokenizer lex;
+    // Changes whenever the language accepted changes, so that
+    // results saved by an earlier version are not reused.
+    public static final int VERSION = 1;
+
+    // The source of tokens.
+    private final TokenSource lex;
     private final SymbolTable symbolTable;
+    // The tree being built, or null if none is wanted.
+    private final SyntaxTree tree;
+    // The index of the current token in the order read.
+    private int tokenIndex = -1;
+    // The errors found so far when recovering from them, or null if
+    // the parse stops at the first.
+    private List<Diagnostic> diagnostics;
+    // The tokenizer line number at the first error.
+    private int errorLine;
+    // Whether the end of the input has been reported.
+    private boolean endReported;
+    // The names of identifiers and types.
+    private IdentifierPool pool;
+    // Type ids that need to be recognised.
+    private int arrayType;
+    private int voidType;
+    // Type ids of the keywords that are types, by ordinal.
+    private final int[] keywordTypes = new int[Keyword.values().length];
+    // The classes of the project, against which calls and class types
+    // are checked, or null if the class is parsed on its own.
+    private ProjectIndex index;
+    // The path of the file being parsed, and the declarations of its
+    // class from the index.
+    private String source;
+    private ProjectIndex.ClassDeclarations thisClass;
+
+    // Sets of token types and keywords, as masks of bits indexed by ordinal.
+    private static final int TYPE_TOKENS = setOf(Token.KEYWORD, Token.IDENTIFIER);
+    private static final int CLASS_VAR_KINDS = setOf(Keyword.STATIC, Keyword.FIELD);
+    private static final int ROUTINE_KINDS = setOf(Keyword.CONSTRUCTOR, Keyword.FUNCTION, Keyword.METHOD);
+    private static final int PRIMITIVE_TYPES = setOf(Keyword.INT, Keyword.CHAR, Keyword.BOOLEAN);
+    private static final int STATEMENTS = setOf(Keyword.DO, Keyword.IF, Keyword.LET, Keyword.RETURN, Keyword.WHILE);
+    private static final int KEYWORD_CONSTANTS = setOf(Keyword.TRUE, Keyword.FALSE, Keyword.NULL, Keyword.THIS);
+    // Sets of symbols.
+    private static final SymbolSet BINARY_OPS = new SymbolSet("+-*/&|<=>");
+    private static final SymbolSet UNARY_OPS = new SymbolSet("-~");
+    // When parsing subroutine declarations in parallel: the fewest
+    // in each run, and the most runs for each thread.
+    private static final int MIN_RUN_LENGTH = 16;
+    private static final int RUNS_PER_THREAD = 4;
+    // The name a call is qualified by when it is not.
+    private static final int NO_NAME = -1;
+    // The number of arguments of a call that is not checked.
+    private static final int UNCHECKED = -1;
     
     /**
      * Parse a Jack source file.
-     * @param lex The tokenizer.
+     * @param lex The source of tokens: either a Tokenizer or
+     *            a pre-tokenized TokenStream.
+     */
+    public Parser(TokenSource lex)
+    {
+        this(lex, new SymbolTable(), null);
+    }
+
+    /**
+     * Parse a Jack source file, building its syntax tree.
+     * @param lex The source of tokens.
+     * @param tree An empty tree, to which the nodes are added as they
+     *             are parsed. If the parse fails it holds those nodes
+     *             started so far.
      */
-    public Parser(Tokenizer lex)
+    public Parser(TokenSource lex, SyntaxTree tree)
+    {
+        this(lex, new SymbolTable(), tree);
+    }
+
+    /**
+     * @param lex The source of tokens.
+     * @param symbolTable The names already defined.
+     * @param tree The tree to build, or null.
+     */
+    Parser(TokenSource lex, SymbolTable symbolTable, SyntaxTree tree)
     {
         this.lex = lex;
-        this.symbolTable = new SymbolTable();
+        this.symbolTable = symbolTable;
+        this.tree = tree;
+        usePool(lex.getIdentifierPool());
+    }
+
+    /**
+     * Prepare to parse again, once the source of tokens has been reset
+     * to the start of another class. The symbol table and tree, if
+     * there is one, are emptied for reuse.
+     */
+    public void reset()
+    {
+        tokenIndex = -1;
+        diagnostics = null;
+        errorLine = 0;
+        endReported = false;
+        thisClass = null;
+        symbolTable.reset();
+        if(tree != null) {
+            tree.reset();
+        }
+        if(lex.getIdentifierPool() != pool) {
+            usePool(lex.getIdentifierPool());
+        }
+    }
+
+    /**
+     * Check what the class uses from other classes against those of a
+     * project: that each class named as a type exists, and that each
+     * subroutine called exists, is called on an object if it is a
+     * method and on a class if not, and is given the number of
+     * arguments it declares. A call may then also be qualified by the
+     * name of a class within an expression. The index must be over the
+     * same pool of identifier names as the source of tokens.
+     * @param index The classes of the project, or null to check nothing
+     *              beyond the class itself.
+     * @param source The path of the file to be parsed, as given to the
+     *               index, so that a class declared again is reported.
+     */
+    void useIndex(ProjectIndex index, String source)
+    {
+        this.index = index;
+        this.source = source;
+    }
+
+    /**
+     * Look up the names of the types that need to be recognised.
+     * @param pool The pool of identifier names of the source.
+     */
+    private void usePool(IdentifierPool pool)
+    {
+        this.pool = pool;
+        this.arrayType = pool.intern("Array");
+        this.voidType = pool.intern("void");
+        for(Keyword k : new Keyword[]{ Keyword.INT, Keyword.CHAR, Keyword.BOOLEAN }) {
+            keywordTypes[k.ordinal()] = pool.intern(k.toString());
+        }
     }
     
     /**
@@ -33,38 +169,547 @@ public class Parser {
      * @throws ParsingFailure on failure.
      */
     public void parseClass() {
+        try {
+            parseClassStart();
+        }
+        catch(ParsingFailure ex) {
+            // The class node, if started, stays open.
+            recover(ex, openNodes());
+            skipDeclaration();
+        }
+        parseClassVarDecs();
+        parseSubroutineDecs();
+        parseClassEnd();
+    }
+
+    /**
+     * Parse a Jack class file, recovering from each error so as to find
+     * as many as possible in one pass.
+     *
+     * After an error, tokens are skipped up to a point at which parsing
+     * can resume: the end of the statement or declaration, a closing
+     * bracket, the start of a statement or the start of a class-level
+     * declaration. Brackets opened while skipping are skipped up to
+     * their matching close. A lexical error ends the parse.
+     *
+     * The first error is the one at which parseClass() fails.
+     * @return the errors, in order; empty if the class is valid.
+     */
+    public List<Diagnostic> parseClassReportingErrors() {
+        diagnostics = new ArrayList<>();
+        try {
+            parseClass();
+        }
+        catch(ParsingFailure ex) {
+            report(ex);
+        }
+        catch(RuntimeException ex) {
+            // The tokenizer cannot go beyond a lexical error.
+            if(diagnostics.isEmpty()) {
+                errorLine = lex.getLineNumber();
+            }
+            diagnostics.add(new Diagnostic(lex.getLineNumber(), 0, String.valueOf(ex.getMessage())));
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Parse a Jack class file as parseClass() does, with the same
+     * outcome, but parse its subroutine declarations in parallel.
+     *
+     * Once the class header is parsed, the tokens are scanned for the
+     * starts of the subroutine declarations, the routine keywords one
+     * bracket deep, and each subroutine's name and type are defined as
+     * its declaration would define them. The declarations are divided
+     * into runs of about the same number, and each run is parsed in
+     * turn by a parser of its own, over its own view of the tokens and
+     * a symbol table layered over the names declared before the run.
+     *
+     * The runs are then taken in order. Only if every declaration
+     * before a run was parsed is the run known to start where the
+     * parse would reach, with the names that would be defined, so
+     * the first run to fail is the failure of the class. Should a run
+     * not start where the one before it ended, which can only follow
+     * an error, the rest of the class is parsed on this thread.
+     *
+     * The source of tokens must be a TokenStream before its first
+     * token, so that it can be read on several threads at once; with
+     * any other source, when building a tree, or for a class with few
+     * subroutines, this is the same as parseClass().
+     * @throws ParsingFailure on failure, with the source of tokens at
+     *         the token at which parseClass() would fail.
+     */
+    public void parseClassInParallel() {
+        if(!(lex instanceof TokenStream tokens) || tree != null || diagnostics != null) {
+            parseClass();
+            return;
+        }
+        parseClassHeader();
+        int[] starts = subroutineStarts(tokens, tokenIndex);
+        int threads = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism()
+                                                    : ForkJoinPool.getCommonPoolParallelism() + 1;
+        int runCount = Math.min(starts.length / MIN_RUN_LENGTH, threads * RUNS_PER_THREAD);
+        if(runCount < 2 || starts[0] != tokenIndex) {
+            parseSubroutineDecs();
+            parseClassEnd();
+            return;
+        }
+
+        // Define each subroutine as its declaration would, so far as
+        // it can be; a declaration that cannot be read fails, and
+        // nothing after it matters.
+        int[] marks = new int[starts.length + 1];
+        int count = 0;
+        while(count < starts.length) {
+            marks[count] = symbolTable.mark();
+            int type = declaredType(tokens, starts[count] + 1);
+            if(type == SymbolTable.NO_TYPE || tokens.tokenType(starts[count] + 2) != Token.IDENTIFIER) {
+                count++;
+                break;
+            }
+            symbolTable.define(tokens.identifierId(starts[count] + 2), type, Kind.FUNC);
+            count++;
+        }
+        runCount = Math.min(runCount, count);
+
+        List<SubroutineRun> runs = new ArrayList<>(runCount);
+        for(int r = 0; r < runCount; r++) {
+            int first = (int) ((long) count * r / runCount);
+            int next = (int) ((long) count * (r + 1) / runCount);
+            int end = next < count ? starts[next] : tokens.size();
+            runs.add(new SubroutineRun(this, marks[first], starts[first], end));
+        }
+        ForkJoinTask.invokeAll(runs);
+
+        // Take the runs that follow on from each other, with the names
+        // they defined, and go on from where the last of them ended.
+        symbolTable.rollback(marks[0]);
+        for(SubroutineRun run : runs) {
+            if(run.start != tokenIndex) {
+                break;
+            }
+            if(run.failure != null) {
+                tokens.seek(run.tokens.position());
+                tokenIndex = run.parser.tokenIndex;
+                throw run.failure;
+            }
+            SymbolTable defined = run.parser.symbolTable;
+            for(int e = 0; e < defined.size(); e++) {
+                symbolTable.define(defined.nameAt(e), defined.typeAt(e), defined.kindAt(e));
+            }
+            tokens.seek(run.tokens.position());
+            tokenIndex = run.parser.tokenIndex;
+        }
+        parseSubroutineDecs();
+        parseClassEnd();
+    }
+
+    /**
+     * A run of subroutine declarations, parsed on a thread of its own.
+     */
+    private static class SubroutineRun extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The index of the first token of the run, and of the token after it.
+        final int start;
+        final int end;
+        final TokenStream tokens;
+        final Parser parser;
+        // Why the run failed, or null if it did not.
+        RuntimeException failure;
+
+        /**
+         * @param owner The parser of the class, which has parsed its header.
+         * @param mark The mark in the owner's symbol table of the names
+         *             defined before the run.
+         * @param start The index of the first token of the run.
+         * @param end The index of the token after it, or the size of
+         *            the tokens if the run is the last.
+         */
+        SubroutineRun(Parser owner, int mark, int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.tokens = ((TokenStream) owner.lex).duplicate();
+            this.parser = new Parser(this.tokens, SymbolTable.layeredOver(owner.symbolTable, mark), null);
+            parser.index = owner.index;
+            parser.source = owner.source;
+            parser.thisClass = owner.thisClass;
+        }
+
+        /**
+         * Parse declarations from the start of the run, up to its end
+         * or the first token that does not start another.
+         */
+        @Override
+        protected void compute() {
+            tokens.seek(start);
+            parser.tokenIndex = start;
+            try {
+                do {
+                    parser.parseSubroutineDec();
+                } while(tokens.position() < end && parser.isRoutineKind());
+            }
+            catch(RuntimeException ex) {
+                failure = ex;
+            }
+        }
+    }
+
+    /**
+     * Find where the subroutine declarations of a class may start:
+     * at each routine keyword one bracket deep, before the bracket
+     * that closes the class.
+     * @param tokens The tokens of the class.
+     * @param from The index of the token after the class header.
+     * @return the index of each routine keyword.
+     */
+    private static int[] subroutineStarts(TokenStream tokens, int from) {
+        int[] starts = new int[16];
+        int count = 0;
+        int depth = 1;
+        for(int i = Math.max(from, 0); i < tokens.size() && depth > 0; i++) {
+            Token type = tokens.tokenType(i);
+            if(type == Token.SYMBOL) {
+                char c = tokens.symbol(i);
+                if(c == '{') {
+                    depth++;
+                }
+                else if(c == '}') {
+                    depth--;
+                }
+            }
+            else if(type == Token.KEYWORD && depth == 1 && (ROUTINE_KINDS & bit(tokens.keyword(i))) != 0) {
+                if(count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @param tokens The tokens of a class.
+     * @param index The index of the token after a routine keyword.
+     * @return the type that the token gives the subroutine, or NO_TYPE
+     *         if it is not a type or void.
+     */
+    private int declaredType(TokenStream tokens, int index) {
+        Token type = tokens.tokenType(index);
+        if(type == Token.IDENTIFIER) {
+            return tokens.identifierId(index);
+        }
+        if(type != Token.KEYWORD) {
+            return SymbolTable.NO_TYPE;
+        }
+        Keyword k = tokens.keyword(index);
+        if(k == Keyword.VOID) {
+            return voidType;
+        }
+        return (PRIMITIVE_TYPES & bit(k)) != 0 ? keywordTypes[k.ordinal()] : SymbolTable.NO_TYPE;
+    }
+
+    /**
+     * Return the tokenizer line number at the first error found by
+     * parseClassReportingErrors(), which is the line that parseClass()
+     * would fail at.
+     * @return the line number, or 0 if there were no errors.
+     */
+    public int getErrorLine() {
+        return errorLine;
+    }
+
+    /**
+     * @return the number of tokens read so far: after parseClass(),
+     *         up to the end of the class or the point of failure.
+     */
+    public int getTokenCount() {
+        return tokenIndex + 1;
+    }
+
+    /**
+     * Parse a class held in memory, keeping what is needed to parse
+     * it again after an edit.
+     * @param text The source of the class.
+     * @param pool The pool of identifier names.
+     * @return the outcome.
+     */
+    public static ParsedClass parse(CharSequence text, IdentifierPool pool) {
+        return parse(TokenStream.lex(new Tokenizer(text, pool)), null);
+    }
+
+    /**
+     * Parse a class again after an edit to its text.
+     * Only the tokens around the edit are lexed again, and only the
+     * subroutine declarations from the one the edit falls in up to the
+     * first one beyond it that starts in the same state are parsed
+     * again; the class-level names and the outcome of the rest of the
+     * class are taken from the previous result. An edit to the class
+     * header, or one that changes a subroutine's name or type, means
+     * that more of the class is parsed again.
+     * @param previous The result of parsing the text before the edit.
+     * @param offset The offset in the text of the start of the edit.
+     * @param removedLength The number of characters removed.
+     * @param inserted The characters inserted in their place.
+     * @return the outcome, which is the same as parsing the whole
+     *         of the edited text.
+     */
+    public static ParsedClass reparse(ParsedClass previous, int offset, int removedLength,
+                                      CharSequence inserted) {
+        TokenStream tokens = previous.tokens.edit(offset, removedLength, inserted);
+        // The parser only ever looks at the current token, so if it
+        // failed before the edit it still fails in the same place.
+        if(!previous.ok && previous.failure + 1 < tokens.firstChanged()) {
+            return new ParsedClass(tokens, previous.symbolTable, previous.checkpoints,
+                    previous.marks, previous.checkpointCount, false,
+                    previous.failure, previous.errorLine, 0);
+        }
+        return parse(tokens, previous);
+    }
+
+    /**
+     * Parse the given tokens, reusing what can be reused from the
+     * previous result.
+     * @param tokens The tokens, made by editing those of previous.
+     * @param previous The previous result, or null.
+     * @return the outcome.
+     */
+    private static ParsedClass parse(TokenStream tokens, ParsedClass previous) {
+        // Resume at the last checkpoint before anything changed.
+        int resume = -1;
+        if(previous != null) {
+            int i = Arrays.binarySearch(previous.checkpoints, 0, previous.checkpointCount,
+                                        tokens.firstChanged());
+            resume = i >= 0 ? i : -i - 2;
+        }
+        SymbolTable table;
+        int[] checkpoints;
+        int[] marks;
+        int count;
+        if(resume >= 0) {
+            table = new SymbolTable(previous.symbolTable, previous.marks[resume]);
+            checkpoints = Arrays.copyOf(previous.checkpoints, previous.checkpoints.length);
+            marks = Arrays.copyOf(previous.marks, previous.marks.length);
+            count = resume;
+            tokens.seek(previous.checkpoints[resume]);
+        }
+        else {
+            table = new SymbolTable();
+            checkpoints = new int[16];
+            marks = new int[16];
+            count = 0;
+            tokens.seek(-1);
+        }
+        int resumeMark = table.mark();
+        Parser parser = new Parser(tokens, table, null);
+        int parsed = 0;
+        try {
+            if(resume < 0) {
+                parser.parseClassHeader();
+            }
+            while(true) {
+                int position = tokens.position();
+                if(previous != null && position >= tokens.firstReused()) {
+                    int match = Arrays.binarySearch(previous.checkpoints, 0, previous.checkpointCount,
+                                                    position - tokens.shift());
+                    if(match >= 0 && sameNames(table, previous.symbolTable, resumeMark, previous.marks[match])) {
+                        // The rest of the parse would be as before.
+                        return reuse(tokens, previous, match, checkpoints, marks, count, parsed);
+                    }
+                }
+                if(count == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                    marks = Arrays.copyOf(marks, count * 2);
+                }
+                checkpoints[count] = position;
+                marks[count] = table.mark();
+                count++;
+                if(!parser.isRoutineKind()) {
+                    break;
+                }
+                parser.parseSubroutineDec();
+                parsed++;
+            }
+            parser.parseClassEnd();
+            return new ParsedClass(tokens, table, checkpoints, marks, count, true, 0, 0, parsed);
+        }
+        catch(RuntimeException ex) {
+            return new ParsedClass(tokens, table, checkpoints, marks, count, false,
+                                   tokens.position(), tokens.getLineNumber(), parsed);
+        }
+    }
+
+    /**
+     * @return true if the names defined in a from the mark up to the
+     *         end of a are those defined in b from the mark up to end.
+     */
+    private static boolean sameNames(SymbolTable a, SymbolTable b, int mark, int end) {
+        if(a.size() != end) {
+            return false;
+        }
+        for(int e = mark; e < end; e++) {
+            if(a.nameAt(e) != b.nameAt(e) || a.typeAt(e) != b.typeAt(e) || a.kindAt(e) != b.kindAt(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Complete a parse by taking the rest of it from the previous result.
+     * @param tokens The tokens being parsed.
+     * @param previous The previous result.
+     * @param match The previous checkpoint at which the parse has arrived.
+     * @param checkpoints The checkpoints of the parse so far.
+     * @param marks The marks of the checkpoints so far.
+     * @param count The number of checkpoints so far.
+     * @param parsed The number of subroutine declarations parsed.
+     * @return the outcome.
+     */
+    private static ParsedClass reuse(TokenStream tokens, ParsedClass previous, int match,
+                                     int[] checkpoints, int[] marks, int count, int parsed) {
+        int shift = tokens.shift();
+        int total = count + previous.checkpointCount - match;
+        if(total > checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, total);
+            marks = Arrays.copyOf(marks, total);
+        }
+        for(int i = match; i < previous.checkpointCount; i++) {
+            checkpoints[count] = previous.checkpoints[i] + shift;
+            marks[count] = previous.marks[i];
+            count++;
+        }
+        // The table only differs from the previous one in entries that
+        // were defined again identically.
+        if(previous.ok) {
+            return new ParsedClass(tokens, previous.symbolTable, checkpoints, marks, count,
+                                   true, 0, 0, parsed);
+        }
+        int failure = previous.failure + shift;
+        return new ParsedClass(tokens, previous.symbolTable, checkpoints, marks, count,
+                               false, failure, tokens.line(failure), parsed);
+    }
+
+    /**
+     * class ::= CLASS IDENTIFIER '{' classVarDec *
+     * Parse the start of a class, up to its first subroutine declaration.
+     * @throws ParsingFailure on failure.
+     */
+    private void parseClassHeader() {
+        parseClassStart();
+        parseClassVarDecs();
+    }
+
+    /**
+     * Parse the class keyword, name and opening bracket.
+     * @throws ParsingFailure on failure.
+     */
+    private void parseClassStart() {
         // Move to first token.
-        lex.advance();
+        advance();
 
         // Check first token is the keyword 'class'.
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.CLASS });
-        lex.advance();
+        expectKeyword(Keyword.CLASS);
+        int first = tokenIndex;
+        advance();
 
         // Check for class identifier.
-        validateTokenType(new Token[]{ Token.IDENTIFIER });
+        expect(Token.IDENTIFIER);
+        start(NodeKind.CLASS, tokenIndex, first);
         //Store class name in symbol table.
-        symbolTable.define(lex.getIdentifier(), "", Kind.CLASS);
-        lex.advance();
+        symbolTable.define(lex.getIdentifierId(), SymbolTable.NO_TYPE, Kind.CLASS);
+        if(index != null) {
+            thisClass = index.classNamed(lex.getIdentifierId());
+            if(thisClass != null && thisClass.source != null && !thisClass.source.equals(source)) {
+                ProjectIndex.ClassDeclarations other = thisClass;
+                // The subroutines of this class are not those indexed.
+                thisClass = null;
+                throw new ParsingFailure(null, "'" + lex.getIdentifier() + "' is also declared in "
+                                               + other.source);
+            }
+        }
+        advance();
 
         // Check for opening bracket
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '{' });
-        lex.advance();
+        expectSymbol('{');
+        advance();
+    }
 
-        // Parse 0 or more class variable declarations.
+    /**
+     * Parse 0 or more class variable declarations.
+     */
+    private void parseClassVarDecs() {
         while(isClassVarDec()) {
-            parseClassVarDec();
+            int open = openNodes();
+            try {
+                parseClassVarDec();
+            }
+            catch(ParsingFailure ex) {
+                recover(ex, open);
+                skipDeclaration();
+            }
         }
+    }
 
-
-        while(isRoutineKind()) {
-            parseSubroutineDec();
+    /**
+     * Parse 0 or more subroutine declarations. When recovering from
+     * errors, anything else before the end of the class is an error.
+     */
+    private void parseSubroutineDecs() {
+        while(true) {
+            if(isRoutineKind()) {
+                int open = openNodes();
+                try {
+                    parseSubroutineDec();
+                }
+                catch(ParsingFailure ex) {
+                    recover(ex, open);
+                    symbolTable.endSubroutine();
+                    skipDeclaration();
+                }
+            }
+            else if(diagnostics == null || isSymbol('}')) {
+                return;
+            }
+            else {
+                recover(expected("a subroutine declaration or '}'"), openNodes());
+                if(isClassVarDec()) {
+                    advance();
+                }
+                skipDeclaration();
+            }
         }
+    }
 
+    /**
+     * Parse the end of a class, after its subroutine declarations.
+     * @throws ParsingFailure on failure.
+     */
+    private void parseClassEnd() {
         // Check for closing bracket
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '}' });
+        expectSymbol('}');
+        // The closing bracket is the last token read.
+        if(tree != null && tree.openCount() > 0) {
+            tree.finish(tokenIndex + 1);
+        }
+    }
+
+    /**
+     * Return the class-level names defined so far: after a successful
+     * parseClass(), the names the class declares.
+     * @return the names, in order of declaration.
+     */
+    public List<ClassSymbol> getClassSymbols() {
+        List<ClassSymbol> symbols = new ArrayList<>();
+        for(int e = 0; e < symbolTable.size(); e++) {
+            Kind kind = symbolTable.kindAt(e);
+            if(kind.isClassScope()) {
+                int type = symbolTable.typeAt(e);
+                symbols.add(new ClassSymbol(pool.name(symbolTable.nameAt(e)),
+                        type == SymbolTable.NO_TYPE ? "" : pool.name(type), kind));
+            }
+        }
+        return symbols;
     }
 
     /**
@@ -72,8 +717,7 @@ public class Parser {
      * @return Returns true if the current token is the static or field keyword.
      */
     private boolean isClassVarDec() {
-        return lex.getTokenType() == Token.KEYWORD &&
-                (lex.getKeyword() == Keyword.STATIC || lex.getKeyword() == Keyword.FIELD);
+        return isKeyword(CLASS_VAR_KINDS);
     }
 
     /**
@@ -81,56 +725,51 @@ public class Parser {
      * @throws ParsingFailure on failure.
      */
     private void parseClassVarDec() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.FIELD, Keyword.STATIC });
+        expectKeyword(CLASS_VAR_KINDS);
+        start(NodeKind.CLASS_VAR_DEC);
         // Get kind to store
         SymbolTable.Kind kind = lex.getKeyword() == Keyword.FIELD ? SymbolTable.Kind.FIELD : SymbolTable.Kind.STATIC;
-        lex.advance();
+        advance();
 
         // Parse data type and store for definition in symbol table.
-        String type = parseType();
-
+        int type = parseType();
 
-        // parse variable declaration list and store identifiers.
-        ArrayList<String> identifiers = parseVarList();
 
-        //Store the class variables.
-        for (String identifier : identifiers) {
-            symbolTable.define(identifier, type, kind);
-        }
+        // parse variable declaration list and store the class variables.
+        parseVarList(type, kind);
 
         // Parse ending semicolon.
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ';' });
+        expectSymbol(';');
 
-        lex.advance();
+        advance();
+        finish();
     }
 
     /**
      * varList ::= IDENTIFIER ( ',' varList ) ?
+     * Each variable is stored in the symbol table as it is parsed.
+     * @param type The type of the variables.
+     * @param kind The kind of the variables.
      */
-    private ArrayList<String> parseVarList() {
-        validateTokenType(new Token[]{ Token.IDENTIFIER });
-        // Store identity name.
-        ArrayList<String> varNames = new ArrayList<>();
-        varNames.add(lex.getIdentifier());
-        lex.advance();
-
-        // Recursive call if more than one variable.
-        if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == ',') {
-            lex.advance();
-            // Add all further identifiers to list
-            varNames.addAll(parseVarList());
+    private void parseVarList(int type, Kind kind) {
+        expect(Token.IDENTIFIER);
+        leaf(NodeKind.NAME, tokenIndex);
+        symbolTable.define(lex.getIdentifierId(), type, kind);
+        advance();
+
+        // Loop while there are more variables.
+        while(isSymbol(',')) {
+            advance();
+            expect(Token.IDENTIFIER);
+            leaf(NodeKind.NAME, tokenIndex);
+            symbolTable.define(lex.getIdentifierId(), type, kind);
+            advance();
         }
-        return varNames;
     }
 
 
     private boolean isRoutineKind() {
-        return lex.getTokenType() == Token.KEYWORD &&
-                (lex.getKeyword() == Keyword.CONSTRUCTOR ||
-                        lex.getKeyword() == Keyword.FUNCTION ||
-                        lex.getKeyword() == Keyword.METHOD);
+        return isKeyword(ROUTINE_KINDS);
     }
 
     /**
@@ -138,124 +777,149 @@ public class Parser {
      *  '(' parameterList ? ')' subroutineBody
      */
     private void parseSubroutineDec() {
+        int first = tokenIndex;
         parseRoutineKind();
-        // Start new subroutine local scope.
-        symbolTable.startSubroutine();
 
-        String type;
+        int type;
         // if type void advance, else parse as type.
-        if(lex.getTokenType() == Token.KEYWORD && lex.getKeyword() == Keyword.VOID) {
-            type = "void";
-            lex.advance();
+        if(isKeyword(Keyword.VOID)) {
+            type = voidType;
+            advance();
         }
         else type = parseType();
 
 
-        validateTokenType(new Token[]{ Token.IDENTIFIER });
+        expect(Token.IDENTIFIER);
+        start(NodeKind.SUBROUTINE_DEC, tokenIndex, first);
         // Store function name in symbol table.
-        symbolTable.define(lex.getIdentifier(), type, Kind.FUNC);
-        lex.advance();
+        symbolTable.define(lex.getIdentifierId(), type, Kind.FUNC);
+        advance();
+        // Start new subroutine local scope.
+        symbolTable.startSubroutine();
         // Check for opening parameters bracket.
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '(' });
-        lex.advance();
+        expectSymbol('(');
+        advance();
 
         // If not a symbol atom then must be parameters, so parse and store them in the symbol table.
         if(lex.getTokenType() != Token.SYMBOL) {
-            ArrayList<Identity> parameters = parseParameterList();
-            parameters.forEach((identity -> symbolTable.define(identity.name, identity.type, identity.kind)));
+            parseParameterList();
         }
         // Check for closing parameters bracket.
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ ')' });
-        lex.advance();
+        expectSymbol(')');
+        advance();
 
         parseSubroutineBody();
+        symbolTable.endSubroutine();
+        finish();
     }
 
     private void parseRoutineKind() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.CONSTRUCTOR, Keyword.FUNCTION, Keyword.METHOD});
-        lex.advance();
+        expectKeyword(ROUTINE_KINDS);
+        advance();
     }
 
-    private ArrayList<Identity> parseParameterList() {
-        // parse first of 1-n parameters.
-        String type = parseType();
-        validateTokenType(new Token[]{ Token.IDENTIFIER });
-        String identifier = lex.getIdentifier();
-        lex.advance();
-
-        //store first parameter.
-        ArrayList<Identity> parameters = new ArrayList<>();
-        parameters.add(new Identity(identifier, type, SymbolTable.Kind.ARG));
+    /**
+     * parameterList ::= type IDENTIFIER ( ',' parameterList ) ?
+     * Each parameter is stored in the symbol table as it is parsed.
+     */
+    private void parseParameterList() {
+        parseParameter();
 
-        // if there are more parameters remaining then recursively call method.
-        if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == ',') {
-            lex.advance();
-            parameters.addAll(parseParameterList());
+        // Loop while there are more parameters.
+        while(isSymbol(',')) {
+            advance();
+            parseParameter();
         }
-        return parameters;
+    }
+
+    private void parseParameter() {
+        int first = tokenIndex;
+        int type = parseType();
+        expect(Token.IDENTIFIER);
+        start(NodeKind.PARAMETER, tokenIndex, first);
+        symbolTable.define(lex.getIdentifierId(), type, Kind.ARG);
+        advance();
+        finish();
     }
 
     private void parseSubroutineBody() {
         // Check for opening curly brace
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '{' });
-        lex.advance();
+        expectSymbol('{');
+        advance();
 
         // Parse 0-n local variable declarations.
         while(isVarDec()) {
-            parseVarDec();
+            int open = openNodes();
+            try {
+                parseVarDec();
+            }
+            catch(ParsingFailure ex) {
+                recover(ex, open);
+                skipStatement();
+            }
         }
 
-        // Parse 0-n statements.
-        while(isStatement()) {
-            parseStatement();
-        }
+        parseStatements();
 
         // Check for closing curly brace
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '}' });
-        lex.advance();
+        expectSymbol('}');
+        advance();
     }
 
     private boolean isVarDec() {
-        return lex.getTokenType() == Token.KEYWORD && lex.getKeyword() == Keyword.VAR;
+        return isKeyword(Keyword.VAR);
     }
 
     private void parseVarDec() {
         // Check for var keyword.
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.VAR });
-        lex.advance();
+        expectKeyword(Keyword.VAR);
+        start(NodeKind.VAR_DEC);
+        advance();
 
         // Check for and store type.
-        String type = parseType();
-
-        // Check for and store list of identifiers.
-        ArrayList<String> identifiers = parseVarList();
+        int type = parseType();
 
-        // Store variables in symbol table.
-        identifiers.forEach(identity -> symbolTable.define(identity, type, Kind.VAR));
+        // Check for and store list of identifiers in the symbol table.
+        parseVarList(type, Kind.VAR);
 
         // Check for closing semicolon.
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ ';' });
-        lex.advance();
+        expectSymbol(';');
+        advance();
+        finish();
     }
 
     private boolean isStatement() {
-        return lex.getTokenType() == Token.KEYWORD &&
-                (lex.getKeyword() == Keyword.DO ||
-                        lex.getKeyword() == Keyword.IF ||
-                        lex.getKeyword() == Keyword.LET ||
-                        lex.getKeyword() == Keyword.RETURN ||
-                        lex.getKeyword() == Keyword.WHILE);
+        return isKeyword(STATEMENTS);
+    }
+
+    /**
+     * Parse 0-n statements. When recovering from errors, anything else
+     * before the closing bracket is an error.
+     */
+    private void parseStatements() {
+        while(true) {
+            if(isStatement()) {
+                int open = openNodes();
+                try {
+                    parseStatement();
+                }
+                catch(ParsingFailure ex) {
+                    recover(ex, open);
+                    skipStatement();
+                }
+            }
+            else if(diagnostics == null || isSymbol('}') || isRoutineKind()) {
+                return;
+            }
+            else {
+                recover(expected("a statement or '}'"), openNodes());
+                skipStatement();
+            }
+        }
     }
 
     private void parseStatement() {
-        validateTokenType(new Token[] { Token.KEYWORD });
+        expect(Token.KEYWORD);
 
         switch (lex.getKeyword()) {
             case DO -> parseDoStatement();
@@ -263,265 +927,360 @@ public class Parser {
             case LET -> parseLetStatement();
             case RETURN -> parseReturnStatement();
             case WHILE -> parseWhileStatement();
-            default -> throw new ParsingFailure();
+            default -> throw expected("a statement");
         }
     }
 
     private void parseDoStatement() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.DO });
-        lex.advance();
+        expectKeyword(Keyword.DO);
+        start(NodeKind.DO);
+        advance();
 
-        parseSubroutineCall(Character.MIN_VALUE);
+        parseSubroutineCall(Character.MIN_VALUE, NO_NAME);
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ';' });
-        lex.advance();
+        expectSymbol(';');
+        advance();
+        finish();
     }
 
     private void parseIfStatement() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.IF });
-        lex.advance();
+        expectKeyword(Keyword.IF);
+        start(NodeKind.IF);
+        advance();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '(' });
-        lex.advance();
+        expectSymbol('(');
+        advance();
 
         parseExpression();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ')' });
-        lex.advance();
+        expectSymbol(')');
+        advance();
 
         // Parse if statement block
         parseBlock();
 
         // parse optional else statement block
-        if(lex.getTokenType() == Token.KEYWORD && lex.getKeyword() == Keyword.ELSE) {
-            validateTokenType(new Token[]{ Token.KEYWORD });
-            validateKeyWord(new Keyword[]{ Keyword.ELSE });
-            lex.advance();
+        if(isKeyword(Keyword.ELSE)) {
+            expectKeyword(Keyword.ELSE);
+            advance();
 
             parseBlock();
         }
+        finish();
     }
 
     private void parseLetStatement() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.LET });
-        lex.advance();
+        expectKeyword(Keyword.LET);
+        int first = tokenIndex;
+        advance();
 
-        validateTokenType(new Token[]{ Token.IDENTIFIER });
+        expect(Token.IDENTIFIER);
+        start(NodeKind.LET, tokenIndex, first);
         //Check variable has been declared.
-        String identifier = lex.getIdentifier();
-        if(!symbolTable.isDefined(identifier)) throw new ParsingFailure();
-        lex.advance();
+        int identifier = lex.getIdentifierId();
+        if(!symbolTable.isDefined(identifier)) throw notDeclared(identifier);
+        advance();
 
         // Parse optional identifier index.
-        if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == '[') {
+        if(isSymbol('[')) {
             //Check variable is of type array.
-            if(symbolTable.typeOf(identifier) != "Array") throw new ParsingFailure();
+            if(symbolTable.typeOf(identifier) != arrayType) throw notArray(identifier);
 
-            validateTokenType(new Token[]{ Token.SYMBOL });
-            validateSymbol(new char[] { '[' });
-            lex.advance();
+            expectSymbol('[');
+            advance();
 
             parseExpression();
 
-            validateTokenType(new Token[]{ Token.SYMBOL });
-            validateSymbol(new char[] { ']' });
-            lex.advance();
+            expectSymbol(']');
+            advance();
         }
 
         // Assignment operator
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '=' });
-        lex.advance();
+        expectSymbol('=');
+        advance();
 
         parseExpression();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ';' });
-        lex.advance();
+        expectSymbol(';');
+        advance();
+        finish();
     }
 
     private void parseReturnStatement() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.RETURN });
-        lex.advance();
+        expectKeyword(Keyword.RETURN);
+        start(NodeKind.RETURN);
+        advance();
 
         // If rule termination is not found then expect an expression.
         if(lex.getTokenType() != Token.SYMBOL || lex.getSymbol() != ';') {
             parseExpression();
         }
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ';' });
-        lex.advance();
+        expectSymbol(';');
+        advance();
+        finish();
     }
 
     private void parseWhileStatement() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.WHILE });
-        lex.advance();
+        expectKeyword(Keyword.WHILE);
+        start(NodeKind.WHILE);
+        advance();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '(' });
-        lex.advance();
+        expectSymbol('(');
+        advance();
 
         parseExpression();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ')' });
-        lex.advance();
+        expectSymbol(')');
+        advance();
 
         // Parse if statement block
         parseBlock();
+        finish();
     }
 
-    private void parseSubroutineCall(char c) {
-        parseSubroutineReference(c);
+    /**
+     * @param c The symbol after the first name, if it has already been
+     *          read within a term, or Character.MIN_VALUE.
+     * @param first The first name, if it has already been read.
+     */
+    private void parseSubroutineCall(char c, int first) {
+        // Within a term the first name has already been read.
+        int name = c == '.' || c == '(' ? tokenIndex - 1 : tokenIndex;
+        start(NodeKind.CALL, name, name);
+        int parameters = parseSubroutineReference(c, first);
 
 
         // Opening subroutine parameter bracket
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '(' });
-        lex.advance();
-
-        if(lex.getTokenType() != Token.SYMBOL || lex.getSymbol() != ';') {
-            parseExpressionList();
+        expectSymbol('(');
+        advance();
+
+        // An empty list would parse as one empty expression, so it is
+        // skipped to give the call no arguments in the tree.
+        int arguments = 0;
+        if(lex.getTokenType() != Token.SYMBOL || (lex.getSymbol() != ';' && lex.getSymbol() != ')')) {
+            arguments = parseExpressionList();
         }
 
         // Closing subroutine parameter bracket
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { ')' });
-        lex.advance();
+        expectSymbol(')');
+        if(parameters != UNCHECKED && arguments != parameters) {
+            throw new ParsingFailure(null, "expected " + parameters + (parameters == 1 ? " argument" : " arguments")
+                                           + ", found " + arguments);
+        }
+        advance();
+        finish();
     }
 
-    private void parseExpressionList() {
+    /**
+     * expressionList ::= expression ( ',' expressionList ) ?
+     * Parsed with a loop, so long argument lists do not deepen the stack.
+     * @return the number of expressions.
+     */
+    private int parseExpressionList() {
         parseExpression();
+        int count = 1;
 
-        if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == ',') {
-            lex.advance();
-            parseExpressionList();
+        while(isSymbol(',')) {
+            advance();
+            parseExpression();
+            count++;
         }
+        return count;
     }
 
-    private void parseSubroutineReference(char c) {
+    /**
+     * @param c The symbol after the first name, if it has already been
+     *          read within a term, or Character.MIN_VALUE.
+     * @param first The first name, if it has already been read.
+     * @return the number of parameters of the subroutine called, or
+     *         UNCHECKED if there is no project to check it against.
+     */
+    private int parseSubroutineReference(char c, int first) {
+        int parameters;
         if(c != '.' && c!= '(') {
-            validateTokenType(new Token[]{ Token.IDENTIFIER });
-            lex.advance();
+            expect(Token.IDENTIFIER);
+            first = lex.getIdentifierId();
+            advance();
 
             // Optional additional identifier
-            if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == '.') {
-                validateTokenType(new Token[]{Token.SYMBOL});
-                validateSymbol(new char[]{'.'});
-                lex.advance();
+            if(isSymbol('.')) {
+                expectSymbol('.');
+                advance();
 
-                validateTokenType(new Token[]{Token.IDENTIFIER});
-                lex.advance();
+                expect(Token.IDENTIFIER);
+                parameters = checkCall(first, lex.getIdentifierId());
+                advance();
+            }
+            else {
+                parameters = checkCall(NO_NAME, first);
             }
         }
         else if(c == '.') {
-            lex.advance();
-            validateTokenType(new Token[]{Token.IDENTIFIER});
-            lex.advance();
+            advance();
+            expect(Token.IDENTIFIER);
+            parameters = checkCall(first, lex.getIdentifierId());
+            advance();
+        }
+        else {
+            parameters = checkCall(NO_NAME, first);
         }
+        return parameters;
+    }
+
+    /**
+     * Check a call against the project, if there is one.
+     * @param qualifier The variable or class the call is qualified by,
+     *                  or NO_NAME for a subroutine of this class.
+     * @param called The name of the subroutine.
+     * @return the number of parameters of the subroutine, or UNCHECKED.
+     * @throws ParsingFailure if the call is not to a subroutine that
+     *         can be called that way.
+     */
+    private int checkCall(int qualifier, int called) {
+        if(index == null) {
+            return UNCHECKED;
+        }
+        ProjectIndex.ClassDeclarations target = thisClass;
+        boolean onObject = false;
+        if(qualifier != NO_NAME) {
+            Kind kind = symbolTable.kindOf(qualifier);
+            if(kind != null && kind != Kind.CLASS && kind != Kind.FUNC) {
+                // A method called on a variable, whose class is its type.
+                target = index.classNamed(symbolTable.typeOf(qualifier));
+                if(target == null) {
+                    throw new ParsingFailure(null, "'" + pool.name(qualifier) + "' is not an object");
+                }
+                onObject = true;
+            }
+            else {
+                target = index.classNamed(qualifier);
+                if(target == null) {
+                    throw kind == null ? notDeclared(qualifier) : notAClass(qualifier);
+                }
+            }
+        }
+        if(target == null) {
+            return UNCHECKED;
+        }
+        int d = target.find(called);
+        Keyword kind = d < 0 ? null : target.kindAt(d);
+        if(kind != Keyword.CONSTRUCTOR && kind != Keyword.FUNCTION && kind != Keyword.METHOD) {
+            throw new ParsingFailure(null, "'" + pool.name(target.name) + "' has no subroutine '"
+                                           + pool.name(called) + "'");
+        }
+        if(qualifier != NO_NAME && onObject != (kind == Keyword.METHOD)) {
+            throw new ParsingFailure(null, "'" + pool.name(target.name) + "." + pool.name(called) + "' is "
+                                           + (onObject ? "not a method" : "a method"));
+        }
+        return target.parametersAt(d);
     }
 
     private void parseBlock() {
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '{' });
-        lex.advance();
+        expectSymbol('{');
+        start(NodeKind.BLOCK);
+        advance();
 
-        // Parse 0-n statements.
-        while(isStatement()) {
-            parseStatement();
-        }
+        parseStatements();
 
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '}' });
-        lex.advance();
+        expectSymbol('}');
+        advance();
+        finish();
     }
 
+    /**
+     * expression ::= term ( binaryOp expression ) ?
+     * Jack operators have no precedence, so the right recursion is
+     * parsed as a loop over terms. Only nested brackets, indexes and
+     * calls deepen the stack, never the length of the expression.
+     */
     private void parseExpression() {
+        start(NodeKind.EXPRESSION);
         parseTerm();
 
-        if(isBinaryOp()) {
+        while(isBinaryOp()) {
             parseBinaryOp();
 
-            parseExpression();
+            parseTerm();
         }
+        finish();
     }
 
     private boolean isBinaryOp() {
-        if(lex.getTokenType() == Token.SYMBOL) {
-            return switch (lex.getSymbol()) {
-                case '+', '-', '*', '/', '&', '|', '<', '=', '>' -> true;
-                default -> false;
-            };
-        }
-        return false;
+        return isSymbol(BINARY_OPS);
     }
 
     private void parseBinaryOp() {
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[]{ '+', '-', '*', '/', '&', '|', '<', '=', '>' });
-        lex.advance();
+        expectSymbol(BINARY_OPS);
+        leaf(NodeKind.OPERATOR, tokenIndex);
+        advance();
     }
 
     private void parseTerm() {
-        if(lex.getTokenType() == Token.INT_CONST){ lex.advance(); return; }
-        if(lex.getTokenType() == Token.STRING_CONST){ lex.advance(); return; }
+        if(lex.getTokenType() == Token.INT_CONST){ leaf(NodeKind.INT_CONST, tokenIndex); advance(); return; }
+        if(lex.getTokenType() == Token.STRING_CONST){ leaf(NodeKind.STRING_CONST, tokenIndex); advance(); return; }
+        // A run of unary operators applies to the term that follows.
         if(isUnaryOp()) {
-            parseUnaryOp();
+            int operators = 0;
+            while(isUnaryOp()) {
+                parseUnaryOp();
+                operators++;
+            }
             parseTerm();
+            // Each operator's node holds the next.
+            for(int i = 0; i < operators; i++) {
+                finish();
+            }
             return;
         }
         if(isKeywordConstant()) {
             parseKeywordConstant();
             return;
         }
-        if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == '(') {
-            validateTokenType(new Token[]{ Token.SYMBOL });
-            validateSymbol(new char[] { '(' });
-            lex.advance();
+        if(isSymbol('(')) {
+            expectSymbol('(');
+            advance();
 
             parseExpression();
 
-            validateTokenType(new Token[]{ Token.SYMBOL });
-            validateSymbol(new char[] { ')' });
-            lex.advance();
+            expectSymbol(')');
+            advance();
             return;
         }
         if(lex.getTokenType() == Token.IDENTIFIER) {
-            String identifier = lex.getIdentifier();
+            int name = tokenIndex;
+            int identifier = lex.getIdentifierId();
             //Check variable has been declared.
-            if(!symbolTable.isDefined(identifier)) throw new ParsingFailure();
-            lex.advance();
+            boolean declared = symbolTable.isDefined(identifier);
+            // In a project, a call may also be qualified by a class.
+            if(!declared && (index == null || index.classNamed(identifier) == null
+                                || !lex.nextIsSymbol('.'))) throw notDeclared(identifier);
+            advance();
 
             // Check for optional IDENTIFIER ( '[' expression ']' ) ?
-            if(lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == '[') {
+            if(isSymbol('[')) {
 
                 //Check variable is of type array.
-                if(symbolTable.typeOf(identifier) != "Array") throw new ParsingFailure();
+                if(symbolTable.typeOf(identifier) != arrayType) throw notArray(identifier);
 
                 // Parse index
-                validateTokenType(new Token[]{ Token.SYMBOL });
-                validateSymbol(new char[] { '[' });
-                lex.advance();
+                expectSymbol('[');
+                start(NodeKind.ARRAY_ELEMENT, name, name);
+                advance();
 
                 parseExpression();
 
-                validateTokenType(new Token[]{ Token.SYMBOL });
-                validateSymbol(new char[] { ']' });
-                lex.advance();
+                expectSymbol(']');
+                advance();
+                finish();
                 return;
             }
             // if the code is a subroutine call
-            if(lex.getTokenType() == Token.SYMBOL && (lex.getSymbol() == '.' || lex.getSymbol() == '(')) {
-                parseSubroutineCall(lex.getSymbol());
+            if(isSymbol('.') || isSymbol('(')) {
+                parseSubroutineCall(lex.getSymbol(), identifier);
+            }
+            else {
+                leaf(NodeKind.VARIABLE, name);
             }
 
         }
@@ -529,72 +1288,388 @@ public class Parser {
     }
 
     private void parseKeywordConstant() {
-        validateTokenType(new Token[]{ Token.KEYWORD });
-        validateKeyWord(new Keyword[]{ Keyword.TRUE, Keyword.FALSE, Keyword.NULL, Keyword.THIS });
-        lex.advance();
+        expectKeyword(KEYWORD_CONSTANTS);
+        leaf(NodeKind.KEYWORD_CONSTANT, tokenIndex);
+        advance();
     }
 
     private boolean isKeywordConstant() {
-        return lex.getTokenType() == Token.KEYWORD &&
-                (lex.getKeyword() == Keyword.TRUE ||
-                        lex.getKeyword() == Keyword.FALSE ||
-                        lex.getKeyword() == Keyword.NULL ||
-                        lex.getKeyword() == Keyword.THIS );
+        return isKeyword(KEYWORD_CONSTANTS);
     }
 
     private void parseUnaryOp() {
-        validateTokenType(new Token[]{ Token.SYMBOL });
-        validateSymbol(new char[] { '-', '~' });
-        lex.advance();
+        expectSymbol(UNARY_OPS);
+        start(NodeKind.UNARY);
+        advance();
     }
 
     private boolean isUnaryOp() {
-        return lex.getTokenType() == Token.SYMBOL &&
-                (lex.getSymbol() == '-' || lex.getSymbol() == '~');
+        return isSymbol(UNARY_OPS);
     }
 
     /**
      * A ParsingFailure exception is thrown on any form of
      * error detected during the parse.
+     *
+     * It has no stack trace, which would be costly to fill in and would
+     * say nothing about the input, so that failing stays cheap even
+     * when error recovery fails many times over on a broken file.
      */
     public static class ParsingFailure extends RuntimeException
     {
+        // Thrown on reaching the end of the input before the end of the class.
+        static final ParsingFailure END_OF_INPUT = new ParsingFailure(null, "unexpected end of input");
+
+        // What was expected instead of the current token, or null.
+        private final String expected;
+
+        public ParsingFailure()
+        {
+            this(null, "syntax error");
+        }
+
+        /**
+         * @param expected What was expected instead of the current token,
+         *                 or null if the message says what was wrong.
+         * @param message What was wrong.
+         */
+        ParsingFailure(String expected, String message)
+        {
+            super(message, null, false, false);
+            this.expected = expected;
+        }
 
+        /**
+         * @return what was expected instead of the current token, or null.
+         */
+        public String getExpected()
+        {
+            return expected;
+        }
     }
 
     /**
      *  A type must be either a keyword (int, char, boolean) or and identifier.
      */
-    private String parseType() {
-        validateTokenType(new Token[]{ Token.KEYWORD, Token.IDENTIFIER });
+    private int parseType() {
+        Token token = lex.getTokenType();
+        if(token == null || (TYPE_TOKENS & bit(token)) == 0) throw expected("a type");
+
+        if(lex.getTokenType() == Token.KEYWORD) {
+            expectKeyword(PRIMITIVE_TYPES);
+            int type = keywordTypes[lex.getKeyword().ordinal()];
+            advance();
+            return type;
+        }
+        int type = lex.getIdentifierId();
+        if(index != null && index.classNamed(type) == null) throw notAClass(type);
+        advance();
+        return type;
+    }
 
-        if(lex.getTokenType() == Token.KEYWORD) validateKeyWord(new Keyword[]{Keyword.INT, Keyword.CHAR, Keyword.BOOLEAN});
-        String type=  lex.getTokenType() == Token.IDENTIFIER ? lex.getIdentifier() : lex.getKeyword().toString();
+    /**
+     * Move to the next token, counting it.
+     * @throws ParsingFailure at the end of the input.
+     */
+    private void advance() {
+        if(!lex.hasMoreTokens()) throw ParsingFailure.END_OF_INPUT;
         lex.advance();
-        return type;
+        tokenIndex++;
+    }
+
+    /*
+     * The methods below recover from errors, if the parser is doing so.
+     */
+
+    /**
+     * Record a failure and finish the nodes of the syntax tree that it
+     * left open, so that parsing can go on.
+     * @param ex The failure.
+     * @param open The number of nodes open before the failed construct.
+     * @throws ParsingFailure the failure, if not recovering from errors,
+     *         or if it is the end of the input and so nothing is left.
+     */
+    private void recover(ParsingFailure ex, int open) {
+        if(diagnostics == null) throw ex;
+        report(ex);
+        if(ex == ParsingFailure.END_OF_INPUT) throw ex;
+        if(tree != null) {
+            while(tree.openCount() > open) {
+                tree.finish(tokenIndex);
+            }
+        }
+    }
+
+    /**
+     * Record a failure at the current token, once only for the end of the
+     * input, and not again if it repeats the failure recorded last.
+     */
+    private void report(ParsingFailure ex) {
+        if(ex == ParsingFailure.END_OF_INPUT) {
+            if(endReported) {
+                return;
+            }
+            endReported = true;
+            diagnostics.add(new Diagnostic(lex.getLineNumber(), 0, ex.getMessage()));
+        }
+        else {
+            String message = ex.getExpected() != null ? ex.getMessage() + ", found " + found() : ex.getMessage();
+            Diagnostic d = new Diagnostic(lex.getTokenLine(), lex.getTokenColumn(), message);
+            // Blocks left open one inside another each fail at the
+            // same token, as each is recovered from in turn.
+            Diagnostic last = diagnostics.isEmpty() ? null : diagnostics.get(diagnostics.size() - 1);
+            if(last != null && last.line == d.line && last.column == d.column && last.message.equals(d.message)) {
+                return;
+            }
+            diagnostics.add(d);
+        }
+        if(diagnostics.size() == 1) {
+            errorLine = lex.getLineNumber();
+        }
     }
 
+    /**
+     * Skip to the end of a statement: past the next ';', or up to the
+     * next statement keyword or closing '}', or to a subroutine
+     * declaration. Brackets opened on the way are skipped to their close.
+     */
+    private void skipStatement() {
+        int depth = 0;
+        while(!isRoutineKind()) {
+            if(lex.getTokenType() == Token.SYMBOL) {
+                char c = lex.getSymbol();
+                if(c == '{') {
+                    depth++;
+                }
+                else if(c == '}') {
+                    if(depth == 0) {
+                        return;
+                    }
+                    depth--;
+                }
+                else if(c == ';' && depth == 0) {
+                    advance();
+                    return;
+                }
+            }
+            else if(depth == 0 && isStatement()) {
+                return;
+            }
+            advance();
+        }
+    }
 
-    private void validateTokenType(Token[] validTypes) {
-        for(Token token: validTypes) {
-            if(lex.getTokenType() == token) return;
+    /**
+     * Skip to the end of a class-level declaration: past the next ';',
+     * or up to the start of the next declaration or the closing '}' of
+     * the class. Brackets opened on the way are skipped to their close.
+     */
+    private void skipDeclaration() {
+        int depth = 0;
+        while(!isRoutineKind() && !isClassVarDec()) {
+            if(lex.getTokenType() == Token.SYMBOL) {
+                char c = lex.getSymbol();
+                if(c == '{') {
+                    depth++;
+                }
+                else if(c == '}') {
+                    if(depth == 0) {
+                        return;
+                    }
+                    depth--;
+                }
+                else if(c == ';' && depth == 0) {
+                    advance();
+                    return;
+                }
+            }
+            advance();
         }
-        throw new ParsingFailure();
     }
 
-    private void validateKeyWord(Keyword[] validKeywords) {
-        for(Keyword keyword: validKeywords) {
-            if(lex.getKeyword() == keyword) return;
+    /**
+     * @return the number of unfinished nodes in the syntax tree.
+     */
+    private int openNodes() {
+        return tree == null ? 0 : tree.openCount();
+    }
+
+    private static ParsingFailure expected(String what) {
+        return new ParsingFailure(what, "expected " + what);
+    }
+
+    private ParsingFailure notDeclared(int name) {
+        return new ParsingFailure(null, "'" + pool.name(name) + "' is not declared");
+    }
+
+    private ParsingFailure notArray(int name) {
+        return new ParsingFailure(null, "'" + pool.name(name) + "' is not an Array");
+    }
+
+    private ParsingFailure notAClass(int name) {
+        return new ParsingFailure(null, "'" + pool.name(name) + "' is not a class");
+    }
+
+    /**
+     * @return a description of the current token.
+     */
+    private String found() {
+        Token type = lex.getTokenType();
+        if(type == null) {
+            return "nothing";
         }
-        throw new ParsingFailure();
+        return switch(type) {
+            case KEYWORD -> "'" + word(lex.getKeyword()) + "'";
+            case SYMBOL -> "'" + lex.getSymbol() + "'";
+            case IDENTIFIER -> "'" + lex.getIdentifier() + "'";
+            case INT_CONST -> String.valueOf(lex.getIntval());
+            case STRING_CONST -> '"' + lex.getStringVal() + '"';
+        };
     }
 
-    private void validateSymbol(char[] validSymbols){
-        for(char c: validSymbols) {
-            if(lex.getSymbol() == c) return;
+    private static String word(Keyword keyword) {
+        return keyword.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return a description of a set of keywords.
+     */
+    private static String describe(int keywords) {
+        StringBuilder s = new StringBuilder();
+        int n = 0;
+        for(Keyword k : Keyword.values()) {
+            if((keywords & bit(k)) != 0) {
+                s.append(n++ == 0 ? "'" : ", '").append(word(k)).append('\'');
+            }
         }
-        throw new ParsingFailure();
+        return n > 1 ? "one of " + s : s.toString();
+    }
+
+    private static String describe(Token token) {
+        return switch(token) {
+            case KEYWORD -> "a keyword";
+            case SYMBOL -> "a symbol";
+            case IDENTIFIER -> "an identifier";
+            case INT_CONST -> "an integer constant";
+            case STRING_CONST -> "a string constant";
+        };
     }
 
+    /*
+     * The methods below add to the syntax tree, if one is being built.
+     */
+
+    /**
+     * Start a node whose main token is the current one.
+     */
+    private void start(NodeKind kind) {
+        start(kind, tokenIndex, tokenIndex);
+    }
 
+    private void start(NodeKind kind, int token, int spanStart) {
+        if(tree != null) {
+            tree.start(kind, token, spanStart);
+        }
+    }
+
+    /**
+     * Finish the innermost node, which ends with the token before the current one.
+     */
+    private void finish() {
+        if(tree != null) {
+            tree.finish(tokenIndex);
+        }
+    }
+
+    /**
+     * Add a node that consists of a single token.
+     */
+    private void leaf(NodeKind kind, int token) {
+        if(tree != null) {
+            tree.start(kind, token, token);
+            tree.finish(token + 1);
+        }
+    }
+
+    /*
+     * The checks below test the current token against precomputed
+     * sets, so they allocate nothing.
+     */
+
+    private boolean isKeyword(Keyword keyword) {
+        return lex.getTokenType() == Token.KEYWORD && lex.getKeyword() == keyword;
+    }
+
+    private boolean isKeyword(int keywords) {
+        return lex.getTokenType() == Token.KEYWORD && (keywords & bit(lex.getKeyword())) != 0;
+    }
+
+    private boolean isSymbol(char symbol) {
+        return lex.getTokenType() == Token.SYMBOL && lex.getSymbol() == symbol;
+    }
+
+    private boolean isSymbol(SymbolSet symbols) {
+        return lex.getTokenType() == Token.SYMBOL && symbols.contains(lex.getSymbol());
+    }
+
+    private void expect(Token type) {
+        if(lex.getTokenType() != type) throw expected(describe(type));
+    }
+
+    private void expectKeyword(Keyword keyword) {
+        if(!isKeyword(keyword)) throw expected("'" + word(keyword) + "'");
+    }
+
+    private void expectKeyword(int keywords) {
+        if(!isKeyword(keywords)) throw expected(describe(keywords));
+    }
+
+    private void expectSymbol(char symbol) {
+        if(!isSymbol(symbol)) throw expected("'" + symbol + "'");
+    }
+
+    private void expectSymbol(SymbolSet symbols) {
+        if(!isSymbol(symbols)) throw expected(symbols.description);
+    }
+
+    private static int bit(Enum<?> e) {
+        return 1 << e.ordinal();
+    }
+
+    private static int setOf(Enum<?>... elements) {
+        int set = 0;
+        for(Enum<?> e : elements) {
+            set |= bit(e);
+        }
+        return set;
+    }
+
+    /**
+     * A set of ASCII symbols, as a 128-bit mask indexed by character.
+     */
+    private static final class SymbolSet {
+        private final long low;
+        private final long high;
+        // The symbols, for messages.
+        private final String description;
+
+        SymbolSet(String symbols) {
+            long low = 0;
+            long high = 0;
+            StringBuilder description = new StringBuilder("one of ");
+            for(char c : symbols.toCharArray()) {
+                if(c < 64) low |= 1L << c;
+                else high |= 1L << (c - 64);
+                description.append(description.length() > 7 ? ", '" : "'").append(c).append('\'');
+            }
+            this.low = low;
+            this.high = high;
+            this.description = description.toString();
+        }
+
+        boolean contains(char c) {
+            if(c < 64) return (low & (1L << c)) != 0;
+            return c < 128 && (high & (1L << (c - 64))) != 0;
+        }
+    }
 }
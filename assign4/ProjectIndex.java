@@ -0,0 +1,428 @@
+package assign4;
+
+import tokenizer.IdentifierPool;
+import tokenizer.Keyword;
+import tokenizer.Token;
+import tokenizer.TokenSource;
+import tokenizer.Tokenizer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The classes of a project, with the subroutines, fields and statics
+ * each declares, so that a file can be checked against the others:
+ * that the subroutines it calls exist, with the number of arguments
+ * given, and that the classes it names as types exist.
+ *
+ * The index is built in two steps. First the declarations of each
+ * file are collected by scanning its tokens, without parsing it,
+ * which is done for many files at once; then they are put together,
+ * with those of the Jack OS, in the order of the files. Where two
+ * files declare the same class, the first is taken, and the Parser
+ * reports the second; a project's own class takes the place of an
+ * OS class of the same name.
+ *
+ * Names are ids from the project's IdentifierPool. Once built, an
+ * index never changes, and its tables are plain arrays, so that any
+ * number of threads may read it at once without locking.
+ */
+public class ProjectIndex {
+    // The subroutines of the Jack OS, as Jack declarations.
+    private static final String JACK_OS =
+        "class Math { function void init() {} function int abs(int x) {} " +
+        "function int multiply(int x, int y) {} function int divide(int x, int y) {} " +
+        "function int min(int x, int y) {} function int max(int x, int y) {} " +
+        "function int sqrt(int x) {} } " +
+        "class String { constructor String new(int maxLength) {} method void dispose() {} " +
+        "method int length() {} method char charAt(int j) {} method void setCharAt(int j, char c) {} " +
+        "method String appendChar(char c) {} method void eraseLastChar() {} method int intValue() {} " +
+        "method void setInt(int j) {} function char backSpace() {} function char doubleQuote() {} " +
+        "function char newLine() {} } " +
+        "class Array { function Array new(int size) {} method void dispose() {} } " +
+        "class Output { function void init() {} function void moveCursor(int i, int j) {} " +
+        "function void printChar(char c) {} function void printString(String s) {} " +
+        "function void printInt(int i) {} function void println() {} function void backSpace() {} } " +
+        "class Screen { function void init() {} function void clearScreen() {} " +
+        "function void setColor(boolean b) {} function void drawPixel(int x, int y) {} " +
+        "function void drawLine(int x1, int y1, int x2, int y2) {} " +
+        "function void drawRectangle(int x1, int y1, int x2, int y2) {} " +
+        "function void drawCircle(int x, int y, int r) {} } " +
+        "class Keyboard { function void init() {} function char keyPressed() {} " +
+        "function char readChar() {} function String readLine(String message) {} " +
+        "function int readInt(String message) {} } " +
+        "class Memory { function void init() {} function int peek(int address) {} " +
+        "function void poke(int address, int value) {} function Array alloc(int size) {} " +
+        "function void deAlloc(Array o) {} } " +
+        "class Sys { function void init() {} function void halt() {} " +
+        "function void error(int errorCode) {} function void wait(int duration) {} }";
+
+    private final IdentifierPool pool;
+    // The declarations of each class, by the id of its name.
+    private final ClassDeclarations[] classes;
+
+    /**
+     * The names a class declares at class level: its subroutines,
+     * with the number of parameters of each, and its fields and statics.
+     * Once made by scanning, the declarations do not change.
+     */
+    public static class ClassDeclarations {
+        // The name of the class.
+        public final int name;
+        // The path of the file it was declared in, or null for an OS class.
+        public final String source;
+        // Columns of the names, sorted by name, and in order of
+        // declaration among those with the same name.
+        private int[] names = new int[16];
+        private Keyword[] kinds = new Keyword[16];
+        private int[] types = new int[16];
+        // The number of parameters of a subroutine, or -1 for a variable.
+        private int[] parameters = new int[16];
+        private int count;
+
+        private ClassDeclarations(int name, String source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        /**
+         * @param name A name.
+         * @return the index of the first declaration of the name,
+         *         or -1 if the class does not declare it.
+         */
+        public int find(int name) {
+            int i = Arrays.binarySearch(names, 0, count, name);
+            if(i < 0) {
+                return -1;
+            }
+            while(i > 0 && names[i - 1] == name) {
+                i--;
+            }
+            return i;
+        }
+
+        /**
+         * @return the number of names declared.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @param i The index of a declaration.
+         * @return its name.
+         */
+        public int nameAt(int i) {
+            return names[i];
+        }
+
+        /**
+         * @param i The index of a declaration.
+         * @return what it declares: STATIC, FIELD, CONSTRUCTOR,
+         *         FUNCTION or METHOD.
+         */
+        public Keyword kindAt(int i) {
+            return kinds[i];
+        }
+
+        /**
+         * @param i The index of a declaration.
+         * @return the type of a variable, or the return type of a
+         *         subroutine, or SymbolTable.NO_TYPE if it is missing.
+         */
+        public int typeAt(int i) {
+            return types[i];
+        }
+
+        /**
+         * @param i The index of a declaration.
+         * @return the number of parameters of a subroutine, or -1
+         *         for a field or static.
+         */
+        public int parametersAt(int i) {
+            return parameters[i];
+        }
+
+        private void add(int name, Keyword kind, int type, int parameterCount) {
+            if(count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                kinds = Arrays.copyOf(kinds, count * 2);
+                types = Arrays.copyOf(types, count * 2);
+                parameters = Arrays.copyOf(parameters, count * 2);
+            }
+            names[count] = name;
+            kinds[count] = kind;
+            types[count] = type;
+            parameters[count] = parameterCount;
+            count++;
+        }
+
+        /**
+         * Sort the declarations by name, keeping the order of those
+         * with the same name.
+         */
+        private void sort() {
+            Integer[] order = new Integer[count];
+            for(int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(names[a], names[b]));
+            int[] sortedNames = new int[count];
+            Keyword[] sortedKinds = new Keyword[count];
+            int[] sortedTypes = new int[count];
+            int[] sortedParameters = new int[count];
+            for(int i = 0; i < count; i++) {
+                sortedNames[i] = names[order[i]];
+                sortedKinds[i] = kinds[order[i]];
+                sortedTypes[i] = types[order[i]];
+                sortedParameters[i] = parameters[order[i]];
+            }
+            names = sortedNames;
+            kinds = sortedKinds;
+            types = sortedTypes;
+            parameters = sortedParameters;
+        }
+    }
+
+    /**
+     * @param pool The pool of the names of the classes.
+     * @param declared The declarations of the project's classes,
+     *                 in the order of their files.
+     */
+    public ProjectIndex(IdentifierPool pool, List<ClassDeclarations> declared) {
+        this.pool = pool;
+        List<ClassDeclarations> os = new ArrayList<>();
+        Tokenizer lex = new Tokenizer(JACK_OS, pool);
+        ClassDeclarations c;
+        while((c = scan(lex, null)) != null) {
+            os.add(c);
+        }
+        // Every name the classes declare is already in the pool.
+        classes = new ClassDeclarations[pool.size()];
+        for(ClassDeclarations d : declared) {
+            if(classes[d.name] == null) {
+                classes[d.name] = d;
+            }
+        }
+        for(ClassDeclarations d : os) {
+            if(classes[d.name] == null) {
+                classes[d.name] = d;
+            }
+        }
+    }
+
+    /**
+     * Collect the declarations of the classes of the given files,
+     * the given number of files at a time, and index them.
+     * @param files The files of the project.
+     * @param pool The pool of names to use.
+     * @param jobs The number of files to scan concurrently.
+     * @return the index. Files that cannot be read, or that do not
+     *         start with a class name, are left out.
+     */
+    public static ProjectIndex build(List<Path> files, IdentifierPool pool, int jobs) {
+        List<ClassDeclarations> declared = new ArrayList<>(files.size());
+        if(jobs <= 1 || files.size() <= 1) {
+            for(Path file : files) {
+                declared.add(BatchParser.declarations(file, pool));
+            }
+        }
+        else {
+            ForkJoinPool workers = new ForkJoinPool(jobs);
+            try {
+                List<Future<ClassDeclarations>> pending = new ArrayList<>(files.size());
+                for(Path file : files) {
+                    pending.add(workers.submit(() -> BatchParser.declarations(file, pool)));
+                }
+                for(Future<ClassDeclarations> d : pending) {
+                    declared.add(d.get());
+                }
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", ex);
+            }
+            catch(ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+            finally {
+                workers.shutdownNow();
+            }
+        }
+        declared.removeIf(d -> d == null);
+        return new ProjectIndex(pool, declared);
+    }
+
+    /**
+     * @return the pool of the names in the index.
+     */
+    public IdentifierPool getIdentifierPool() {
+        return pool;
+    }
+
+    /**
+     * @param name The id of a name.
+     * @return the declarations of the class of that name, or null
+     *         if there is no such class.
+     */
+    public ClassDeclarations classNamed(int name) {
+        return name >= 0 && name < classes.length ? classes[name] : null;
+    }
+
+    /**
+     * Collect the declarations of the next class of a source, by
+     * scanning its tokens for those one bracket deep that start the
+     * declaration of a field, static or subroutine. The rest of the
+     * class is skipped, however malformed, and a lexical error ends
+     * the scan with what has been found so far.
+     * @param lex The source of tokens, at the token before the class.
+     * @param source The path of the file, or null.
+     * @return the declarations, or null if the next tokens are not
+     *         the keyword class and a name.
+     */
+    static ClassDeclarations scan(TokenSource lex, String source) {
+        ClassDeclarations declared = null;
+        try {
+            if(!next(lex) || lex.getTokenType() != Token.KEYWORD || lex.getKeyword() != Keyword.CLASS
+                    || !next(lex) || lex.getTokenType() != Token.IDENTIFIER) {
+                return null;
+            }
+            declared = new ClassDeclarations(lex.getIdentifierId(), source);
+            int depth = 0;
+            boolean more = next(lex);
+            while(more) {
+                Token type = lex.getTokenType();
+                if(type == Token.SYMBOL) {
+                    char c = lex.getSymbol();
+                    if(c == '{') {
+                        depth++;
+                    }
+                    else if(c == '}' && --depth == 0) {
+                        break;
+                    }
+                    more = next(lex);
+                }
+                else if(type == Token.KEYWORD && depth == 1) {
+                    more = scanDeclaration(lex, declared);
+                }
+                else {
+                    more = next(lex);
+                }
+            }
+        }
+        catch(RuntimeException ex) {
+            // The tokenizer cannot go beyond a lexical error.
+        }
+        if(declared != null) {
+            declared.sort();
+        }
+        return declared;
+    }
+
+    /**
+     * Scan a declaration at the keyword that may start it, as far as
+     * its names and, for a subroutine, its parameter list. A token
+     * that does not fit is left for the caller.
+     * @return false if the tokens ran out.
+     */
+    private static boolean scanDeclaration(TokenSource lex, ClassDeclarations declared) {
+        Keyword kind = lex.getKeyword();
+        boolean routine = kind == Keyword.CONSTRUCTOR || kind == Keyword.FUNCTION || kind == Keyword.METHOD;
+        if(!routine && kind != Keyword.STATIC && kind != Keyword.FIELD) {
+            return next(lex);
+        }
+        if(!next(lex)) {
+            return false;
+        }
+        int type = typeOf(lex, routine);
+        if(type == SymbolTable.NO_TYPE) {
+            return true;
+        }
+        if(!next(lex)) {
+            return false;
+        }
+        if(!routine) {
+            // static|field type name ( ',' name ) * ';'
+            while(lex.getTokenType() == Token.IDENTIFIER) {
+                declared.add(lex.getIdentifierId(), kind, type, -1);
+                if(!next(lex)) {
+                    return false;
+                }
+                if(lex.getTokenType() != Token.SYMBOL || lex.getSymbol() != ',' || !next(lex)) {
+                    break;
+                }
+            }
+            return true;
+        }
+        if(lex.getTokenType() != Token.IDENTIFIER) {
+            return true;
+        }
+        int name = lex.getIdentifierId();
+        if(!next(lex)) {
+            return false;
+        }
+        if(lex.getTokenType() != Token.SYMBOL || lex.getSymbol() != '(') {
+            return true;
+        }
+        // Count the parameters up to the closing bracket; the body
+        // is left to the caller, which follows its brackets.
+        int count = 0;
+        while(next(lex)) {
+            if(lex.getTokenType() == Token.SYMBOL) {
+                char c = lex.getSymbol();
+                if(c == ')') {
+                    declared.add(name, kind, type, count);
+                    return next(lex);
+                }
+                if(c == '{' || c == '}') {
+                    return true;
+                }
+                if(c == ',') {
+                    count++;
+                }
+            }
+            else if(count == 0) {
+                count = 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param routine Whether the type is the return type of a subroutine.
+     * @return the type named by the current token, or NO_TYPE.
+     */
+    private static int typeOf(TokenSource lex, boolean routine) {
+        if(lex.getTokenType() == Token.IDENTIFIER) {
+            return lex.getIdentifierId();
+        }
+        if(lex.getTokenType() != Token.KEYWORD) {
+            return SymbolTable.NO_TYPE;
+        }
+        // The names the Parser gives these types.
+        Keyword k = lex.getKeyword();
+        if(k == Keyword.INT || k == Keyword.CHAR || k == Keyword.BOOLEAN) {
+            return lex.getIdentifierPool().intern(k.toString());
+        }
+        if(routine && k == Keyword.VOID) {
+            return lex.getIdentifierPool().intern("void");
+        }
+        return SymbolTable.NO_TYPE;
+    }
+
+    /**
+     * @return true if there was another token to move to.
+     */
+    private static boolean next(TokenSource lex) {
+        if(!lex.hasMoreTokens()) {
+            return false;
+        }
+        lex.advance();
+        return true;
+    }
+}
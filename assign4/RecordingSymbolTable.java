@@ -0,0 +1,114 @@
+package assign4;
+
+import java.util.Arrays;
+
+/**
+ * A SymbolTable that keeps a log of the operations made on it, so
+ * that they can be replayed on a fresh table to time the symbol table
+ * work of a parse apart from the rest of it.
+ *
+ * Only used with --stats, so that the parser's calls on an ordinary
+ * SymbolTable are unaffected.
+ */
+class RecordingSymbolTable extends SymbolTable {
+    // Operation codes in the log.
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int DEFINE = 2;
+    private static final int IS_DEFINED = 3;
+    private static final int TYPE_OF = 4;
+    private static final Kind[] KINDS = Kind.values();
+
+    // Each operation is its code and one operand, then for a
+    // definition the type and kind; unused operands are 0.
+    private int[] log = new int[256];
+    private int length;
+
+    @Override
+    public void startSubroutine() {
+        super.startSubroutine();
+        record(START, 0);
+    }
+
+    @Override
+    public void endSubroutine() {
+        super.endSubroutine();
+        record(END, 0);
+    }
+
+    @Override
+    public void define(int name, int type, Kind kind) {
+        super.define(name, type, kind);
+        record(DEFINE, name);
+        record(type, kind.ordinal());
+    }
+
+    @Override
+    public boolean isDefined(int name) {
+        record(IS_DEFINED, name);
+        return super.isDefined(name);
+    }
+
+    @Override
+    public int typeOf(int name) {
+        record(TYPE_OF, name);
+        return super.typeOf(name);
+    }
+
+    /**
+     * @return the number of operations recorded.
+     */
+    int getOperations() {
+        int operations = 0;
+        for(int i = 0; i < length; i += log[i] == DEFINE ? 4 : 2) {
+            operations++;
+        }
+        return operations;
+    }
+
+    /**
+     * Make the recorded operations again, in order, on a new table.
+     * @return a value derived from the results of the lookups.
+     */
+    long replay() {
+        SymbolTable table = new SymbolTable();
+        long found = 0;
+        int i = 0;
+        while(i < length) {
+            switch(log[i]) {
+                case START -> {
+                    table.startSubroutine();
+                    i += 2;
+                }
+                case END -> {
+                    table.endSubroutine();
+                    i += 2;
+                }
+                case DEFINE -> {
+                    table.define(log[i + 1], log[i + 2], KINDS[log[i + 3]]);
+                    i += 4;
+                }
+                case IS_DEFINED -> {
+                    found += table.isDefined(log[i + 1]) ? 1 : 0;
+                    i += 2;
+                }
+                default -> {
+                    found += table.typeOf(log[i + 1]);
+                    i += 2;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Add a pair of values to the log.
+     */
+    private void record(int first, int second) {
+        if(length + 2 > log.length) {
+            log = Arrays.copyOf(log, log.length * 2);
+        }
+        log[length++] = first;
+        log[length++] = second;
+    }
+}
@@ -0,0 +1,292 @@
+package assign4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of parse results, so that files whose content has
+ * not changed since an earlier run need not be parsed again.
+ *
+ * Results are keyed by a SHA-256 digest of the file content and are
+ * only valid for the Parser.VERSION that produced them. The cache file
+ * holds at most a fixed number of entries, dropping those least
+ * recently used.
+ *
+ * Several processes may share a cache file. Each loads it at the start
+ * of a run, and on save merges its results into whatever is on disk
+ * while holding an exclusive lock on a sibling lock file. The new
+ * contents are written to a temporary file and moved into place, so a
+ * reader never sees a partly written cache.
+ */
+public class ResultCache {
+    private static final int MAGIC = 0x4A504331;
+    private static final String DIGEST = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    /**
+     * A cached result.
+     */
+    private static class Entry {
+        final boolean ok;
+        final int errorLine;
+        // The class-level names, or null if not known.
+        final List<ClassSymbol> symbols;
+        // When the entry was last used, in milliseconds.
+        volatile long lastUsed;
+
+        Entry(boolean ok, int errorLine, List<ClassSymbol> symbols, long lastUsed) {
+            this.ok = ok;
+            this.errorLine = errorLine;
+            this.symbols = symbols;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private final Path file;
+    private final int capacity;
+    // Entries keyed by content digest.
+    private final Map<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+    // Keys of entries added or used during this run.
+    private final Map<ByteBuffer, Entry> touched = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Open a cache, loading any results already saved in the file.
+     * @param file The cache file, which need not exist.
+     * @param capacity The maximum number of results to keep.
+     */
+    public ResultCache(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+        read(file, entries);
+    }
+
+    /**
+     * Compute the key for the given file's content.
+     * @param src The file.
+     * @return its key.
+     * @throws IOException if the file cannot be read.
+     */
+    public ByteBuffer key(Path src) throws IOException {
+        MessageDigest digest = newDigest();
+        try(FileChannel channel = FileChannel.open(src, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while(channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * Look up the result for a file.
+     * @param key The key of the file's content.
+     * @param name The last part of the name of the file.
+     * @return the result, or null if it is not cached.
+     */
+    public ParseResult get(ByteBuffer key, String name) {
+        Entry e = entries.get(key);
+        if(e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        e.lastUsed = System.currentTimeMillis();
+        touched.put(key, e);
+        return new ParseResult(name, e.ok, e.errorLine, e.symbols);
+    }
+
+    /**
+     * Record the result for a file.
+     * @param key The key of the file's content.
+     * @param result The result.
+     */
+    public void put(ByteBuffer key, ParseResult result) {
+        Entry e = new Entry(result.ok, result.errorLine, result.symbols, System.currentTimeMillis());
+        entries.put(key, e);
+        touched.put(key, e);
+    }
+
+    /**
+     * @return the number of lookups that found a result.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that did not find a result.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return a summary of the use of the cache.
+     */
+    public String getStatistics() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return String.format("Cache: %d hits, %d misses (%.1f%% hit rate)",
+                             h, total - h, total == 0 ? 0.0 : 100.0 * h / total);
+    }
+
+    /**
+     * Merge the results of this run into the cache file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save() throws IOException {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        try(FileChannel lockChannel = FileChannel.open(lockFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                merge();
+            }
+            finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Write the merged entries to the cache file.
+     * The caller holds the lock on the cache.
+     */
+    private void merge() throws IOException {
+        // Start from what other processes may have saved meanwhile.
+        Map<ByteBuffer, Entry> merged = new ConcurrentHashMap<>();
+        read(file, merged);
+        for(Map.Entry<ByteBuffer, Entry> t : touched.entrySet()) {
+            Entry old = merged.get(t.getKey());
+            if(old == null || old.lastUsed < t.getValue().lastUsed) {
+                merged.put(t.getKey(), t.getValue());
+            }
+        }
+        List<Map.Entry<ByteBuffer, Entry>> kept = new ArrayList<>(merged.entrySet());
+        if(kept.size() > capacity) {
+            // Keep the most recently used.
+            kept.sort(Comparator.comparingLong(
+                    (Map.Entry<ByteBuffer, Entry> m) -> m.getValue().lastUsed).reversed());
+            kept = kept.subList(0, capacity);
+        }
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(),
+                                         file.getFileName().toString(), ".tmp");
+        try {
+            try(OutputStream out = Files.newOutputStream(temp)) {
+                write(out, kept);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read the entries of a cache file. A missing file, or one written
+     * for a different parser version or in another format, is
+     * treated as empty.
+     */
+    private static void read(Path file, Map<ByteBuffer, Entry> entries) {
+        try(DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if(in.readInt() != MAGIC || in.readInt() != Parser.VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                byte[] key = new byte[in.readUnsignedByte()];
+                in.readFully(key);
+                long lastUsed = in.readLong();
+                boolean ok = in.readBoolean();
+                int errorLine = in.readInt();
+                int symbolCount = in.readInt();
+                List<ClassSymbol> symbols = null;
+                if(symbolCount >= 0) {
+                    symbols = new ArrayList<>(symbolCount);
+                    for(int s = 0; s < symbolCount; s++) {
+                        SymbolTable.Kind kind = SymbolTable.Kind.values()[in.readUnsignedByte()];
+                        String name = in.readUTF();
+                        String type = in.readUTF();
+                        symbols.add(new ClassSymbol(name, type, kind));
+                    }
+                }
+                entries.put(ByteBuffer.wrap(key), new Entry(ok, errorLine, symbols, lastUsed));
+            }
+        }
+        catch(NoSuchFileException ex) {
+            // Nothing saved yet.
+        }
+        catch(IOException | RuntimeException ex) {
+            // A damaged cache is discarded rather than trusted.
+            entries.clear();
+        }
+    }
+
+    /**
+     * Write entries in the cache file format.
+     */
+    private static void write(OutputStream stream, List<Map.Entry<ByteBuffer, Entry>> entries)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(Parser.VERSION);
+        out.writeInt(entries.size());
+        for(Map.Entry<ByteBuffer, Entry> m : entries) {
+            byte[] key = m.getKey().array();
+            Entry e = m.getValue();
+            out.writeByte(key.length);
+            out.write(key);
+            out.writeLong(e.lastUsed);
+            out.writeBoolean(e.ok);
+            out.writeInt(e.errorLine);
+            if(e.symbols == null) {
+                out.writeInt(-1);
+            }
+            else {
+                out.writeInt(e.symbols.size());
+                for(ClassSymbol s : e.symbols) {
+                    out.writeByte(s.kind.ordinal());
+                    out.writeUTF(s.name);
+                    out.writeUTF(s.type);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        }
+        catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
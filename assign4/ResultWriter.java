@@ -0,0 +1,214 @@
+package assign4;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Write the results of parsing to the standard output or to a file,
+ * through one large buffer, rather than printing each result on its
+ * own. Results are written either as the text Main has always output,
+ * or as NDJSON: one JSON object per line, per file, such as
+ *     {"name":"Main.jack","status":"error","line":12,"tokens":310,"micros":85,
+ *      "errors":[{"line":12,"column":5,"message":"expected ';', found 'let'"}]}
+ * where "line" is null for a file that parses, "tokens" and "micros",
+ * the time taken to read and parse the file, are null for a result
+ * taken from the cache, and "errors" is only present with --all-errors.
+ *
+ * Results may be written from any thread; each is written whole.
+ * A write error stops any further writing, and is kept to be reported
+ * by the caller, in the way a PrintStream keeps it.
+ */
+public class ResultWriter implements Consumer<ParseResult>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * How results are written.
+     */
+    public enum Format {
+        // The text of ParseResult.toString(), with any errors indented below.
+        TEXT,
+        // One JSON object per line.
+        NDJSON;
+
+        /**
+         * @param name The name of a format, in any case.
+         * @return the format, or null if there is none of that name.
+         */
+        public static Format named(String name) {
+            for(Format f : values()) {
+                if(f.name().equalsIgnoreCase(name)) {
+                    return f;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Writer out;
+    private final Format format;
+    // Whether closing the writer closes its channel.
+    private final boolean ownsChannel;
+    private IOException error;
+
+    /**
+     * Write to the standard output. The text is encoded as System.out
+     * would encode it, and NDJSON as UTF-8. Characters the encoding
+     * cannot hold are replaced.
+     * @param format How to write the results.
+     */
+    public ResultWriter(Format format) {
+        this(new FileOutputStream(FileDescriptor.out).getChannel(), format, false);
+    }
+
+    /**
+     * Write to a file, replacing anything it held.
+     * @param file The file.
+     * @param format How to write the results.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ResultWriter(Path file, Format format) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING),
+             format, true);
+    }
+
+    private ResultWriter(FileChannel channel, Format format, boolean ownsChannel) {
+        Charset charset = format == Format.NDJSON ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+        // Unlike Channels.newWriter(), an OutputStreamWriter replaces what
+        // the charset cannot encode, such as a name that is not ASCII.
+        this.out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), charset),
+                                      BUFFER_SIZE);
+        this.format = format;
+        this.ownsChannel = ownsChannel;
+    }
+
+    /**
+     * Write a result.
+     * @param result The result.
+     */
+    @Override
+    public synchronized void accept(ParseResult result) {
+        if(error != null) {
+            return;
+        }
+        try {
+            if(format == Format.NDJSON) {
+                writeJson(result);
+            }
+            else {
+                out.write(Main.format(result));
+            }
+            out.write(LINE_SEPARATOR);
+        }
+        catch(IOException ex) {
+            error = ex;
+        }
+    }
+
+    /**
+     * Write out whatever is buffered.
+     */
+    public synchronized void flush() {
+        if(error != null) {
+            return;
+        }
+        try {
+            out.flush();
+        }
+        catch(IOException ex) {
+            error = ex;
+        }
+    }
+
+    /**
+     * Write out whatever is buffered, and close the file, if writing
+     * to one. The standard output is left open.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        if(ownsChannel) {
+            try {
+                out.close();
+            }
+            catch(IOException ex) {
+                if(error == null) {
+                    error = ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first error in writing, or null if there has been none.
+     */
+    public synchronized IOException getError() {
+        return error;
+    }
+
+    private void writeJson(ParseResult result) throws IOException {
+        out.write("{\"name\":");
+        writeString(result.name);
+        out.write(result.ok ? ",\"status\":\"ok\",\"line\":null" : ",\"status\":\"error\",\"line\":");
+        if(!result.ok) {
+            out.write(Integer.toString(result.errorLine));
+        }
+        out.write(",\"tokens\":");
+        out.write(result.tokens < 0 ? "null" : Integer.toString(result.tokens));
+        out.write(",\"micros\":");
+        out.write(result.nanos < 0 ? "null" : Long.toString(result.nanos / 1000));
+        if(result.diagnostics != null) {
+            out.write(",\"errors\":[");
+            for(int i = 0; i < result.diagnostics.size(); i++) {
+                Diagnostic d = result.diagnostics.get(i);
+                out.write(i == 0 ? "{\"line\":" : ",{\"line\":");
+                out.write(Integer.toString(d.line));
+                out.write(",\"column\":");
+                out.write(d.column > 0 ? Integer.toString(d.column) : "null");
+                out.write(",\"message\":");
+                writeString(d.message);
+                out.write('}');
+            }
+            out.write(']');
+        }
+        out.write('}');
+    }
+
+    /**
+     * Write a JSON string, escaping what must be escaped.
+     */
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int from = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\' || c < ' ') {
+                out.write(s, from, i - from);
+                switch(c) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> out.write(String.format("\\u%04x", (int) c));
+                }
+                from = i + 1;
+            }
+        }
+        out.write(s, from, s.length() - from);
+        out.write('"');
+    }
+}
@@ -0,0 +1,144 @@
+package assign4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Find the source files in a directory tree.
+ *
+ * The tree is walked on a background thread that feeds a bounded queue,
+ * so files can be parsed as soon as they are found rather than after
+ * the whole tree has been listed. Files are delivered in the order
+ * they are visited.
+ */
+public class SourceDiscovery implements Iterable<File> {
+    // How many found files may wait to be parsed.
+    private static final int QUEUE_CAPACITY = 1024;
+    // Marks the end of the walk.
+    private static final File END = new File("");
+
+    private final Path root;
+    private final String suffix;
+
+    /**
+     * @param root The root of the tree to search.
+     * @param suffix The suffix of the names of source files.
+     */
+    public SourceDiscovery(Path root, String suffix) {
+        this.root = root;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Start walking the tree.
+     * @return the source files, in the order they are found.
+     */
+    @Override
+    public Iterator<File> iterator() {
+        BlockingQueue<File> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Thread walker = new Thread(() -> walk(queue), "source-discovery");
+        walker.setDaemon(true);
+        walker.start();
+        return new Iterator<>() {
+            private File next;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null) {
+                    try {
+                        next = queue.take();
+                    }
+                    catch(InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        walker.interrupt();
+                        next = END;
+                    }
+                }
+                return next != END;
+            }
+
+            @Override
+            public File next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                File f = next;
+                next = null;
+                return f;
+            }
+        };
+    }
+
+    /**
+     * Walk the tree, adding each readable source file to the queue.
+     * Directories and files that cannot be read are skipped. Links to
+     * source files are followed; links to directories are not, unless
+     * the root is one. Files are named as if found under the root.
+     * @param queue Where to put the files.
+     */
+    private void walk(BlockingQueue<File> queue) {
+        try {
+            // The walk would visit a root that is a link as a file.
+            Path real = root.toRealPath();
+            Files.walkFileTree(real, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                        throws IOException {
+                    // The attributes are those of a link itself, so the
+                    // file it names is tested: links to sources are kept.
+                    if(file.getFileName().toString().endsWith(suffix) && Files.isRegularFile(file)
+                            && Files.isReadable(file)) {
+                        put(queue, root.resolve(real.relativize(file)).toFile());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch(IOException ex) {
+            // Nothing more can be found.
+        }
+        catch(InterruptedWalk ex) {
+            return;
+        }
+        try {
+            queue.put(END);
+        }
+        catch(InterruptedException ex) {
+            // The consumer has gone.
+        }
+    }
+
+    /**
+     * Add a file to the queue, waiting for space if necessary.
+     */
+    private static void put(BlockingQueue<File> queue, File file) {
+        try {
+            queue.put(file);
+        }
+        catch(InterruptedException ex) {
+            throw new InterruptedWalk();
+        }
+    }
+
+    /**
+     * Abandons the walk when the consumer has stopped.
+     */
+    private static class InterruptedWalk extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -1,63 +1,346 @@
 package assign4;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
+/**
+ * The symbols of a class and of the subroutine being parsed.
+ *
+ * Names and types are ids from the identifier pool. Entries are held
+ * in primitive columns in order of definition, and an open-addressed
+ * table maps each name to its most recent entry, so a lookup is a
+ * single probe whichever scope the name is in. A local entry that
+ * shadows a class-level one remembers it, so leaving a subroutine
+ * simply pops the table back to the mark made on entry.
+ *
+ * A table may be layered over another, which then holds the names it
+ * had at some mark, without being copied, so that many tables on
+ * different threads can share one set of class-level names. Names
+ * defined in the layered table hide those of the table below, and
+ * the entries of a layered table are only those defined in it.
+ */
 public class SymbolTable {
-    private HashMap<String, Identity> classScope;
-    private HashMap<String, Identity> localScope;
+    // The type of a name that has none, or is not defined.
+    public static final int NO_TYPE = -1;
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_ENTRY = -1;
+
+    // Columns of the entries, in order of definition.
+    private int[] names;
+    private int[] types;
+    private byte[] kinds;
+    // Index of the entry among those of the same kind.
+    private int[] indexes;
+    // The entry for the same name that this one hides, or NO_ENTRY.
+    private int[] shadowed;
+    // The slot of the table that holds the entry's name.
+    private int[] slotOf;
+    private int count;
+
+    // Entry + 1 of the most recent definition of a name, or 0 if empty.
+    private int[] slots;
+    private int shift;
+
+    // The number of entries of each kind.
+    private final int[] kindCounts = new int[KINDS.length];
+    // The number of entries when the current subroutine was started, or NO_ENTRY.
+    private int localMark = NO_ENTRY;
+    // The table this one is layered over, or null, and the number of
+    // its entries that are seen through this one.
+    private final SymbolTable outer;
+    private final int outerMark;
 
     /**
      * Constructor
      */
     public SymbolTable() {
-        classScope = new HashMap<String, Identity>();
-        localScope = new HashMap<String, Identity>();
+        this(0, null);
+    }
+
+    /**
+     * @param outerMark The number of entries of outer to see.
+     * @param outer The table to layer this one over, or null.
+     */
+    private SymbolTable(int outerMark, SymbolTable outer) {
+        this.outer = outer;
+        this.outerMark = outerMark;
+        names = new int[INITIAL_CAPACITY];
+        types = new int[INITIAL_CAPACITY];
+        kinds = new byte[INITIAL_CAPACITY];
+        indexes = new int[INITIAL_CAPACITY];
+        shadowed = new int[INITIAL_CAPACITY];
+        slotOf = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(slots.length);
+        // Entries go on being numbered among those of their kind
+        // from where the table below leaves off.
+        for(int e = 0; e < outerMark; e++) {
+            kindCounts[outer.kinds[e]]++;
+        }
+    }
+
+    /**
+     * Make a copy of another table as it was at the given mark,
+     * outside any subroutine.
+     * @param other The table to copy.
+     * @param mark A mark from other.mark().
+     */
+    public SymbolTable(SymbolTable other, int mark) {
+        this();
+        for(int e = 0; e < mark; e++) {
+            define(other.names[e], other.types[e], KINDS[other.kinds[e]]);
+        }
+    }
+
+    /**
+     * Make a table layered over another, as it was at the given mark,
+     * outside any subroutine. The other table is only read, and must
+     * not change up to the mark while the new one is in use.
+     * @param outer The table to layer the new one over.
+     * @param mark A mark from outer.mark().
+     * @return the new table, with no entries of its own.
+     */
+    public static SymbolTable layeredOver(SymbolTable outer, int mark) {
+        return new SymbolTable(mark, outer);
     }
 
     /**
-     * Reset local scope.
+     * Start a new subroutine local scope, leaving any current one.
      */
     public void startSubroutine() {
-        localScope = new HashMap<String, Identity>();
+        endSubroutine();
+        localMark = count;
+    }
+
+    /**
+     * Leave the current subroutine local scope, if there is one.
+     */
+    public void endSubroutine() {
+        if(localMark != NO_ENTRY) {
+            rollback(localMark);
+            localMark = NO_ENTRY;
+        }
+    }
+
+    /**
+     * Empty the table so that it can be used again, keeping the room
+     * it has grown.
+     */
+    public void reset() {
+        localMark = NO_ENTRY;
+        rollback(0);
+    }
+
+    /**
+     * Return a mark that the table can later be rolled back to.
+     * @return the number of entries.
+     */
+    public int mark() {
+        return count;
+    }
+
+    /**
+     * Remove every entry defined since the given mark was made.
+     * Entries are removed most recent first, which restores the table
+     * exactly as it was at the mark.
+     * @param mark A mark from mark().
+     */
+    public void rollback(int mark) {
+        while(count > mark) {
+            int e = --count;
+            slots[slotOf[e]] = shadowed[e] + 1;
+            kindCounts[kinds[e]]--;
+        }
     }
 
     /**
      * Defines a new variable and store it at the appropriate scope.
+     * Names and types are ids from the identifier pool.
      * @param name The name of the variable.
      * @param type The  data type of the variable.
      * @param kind Whether the variable is static, a field, an argument, or a local variable.
      */
-    public void define(String name, String type, Kind kind) {
-        Identity identity = new Identity(name, type, kind);
-
-        switch(kind) {
-            case STATIC, FIELD, CLASS, FUNC -> classScope.put(name, identity);
-            case ARG, VAR -> localScope.put(name, identity);
+    public void define(int name, int type, Kind kind) {
+        if(kind.isClassScope() && localMark != NO_ENTRY) {
+            throw new IllegalStateException("Class-level definition inside a subroutine");
+        }
+        if(count == names.length) {
+            grow();
         }
+        int e = count++;
+        names[e] = name;
+        types[e] = type;
+        kinds[e] = (byte) kind.ordinal();
+        indexes[e] = kindCounts[kind.ordinal()]++;
+
+        int slot = probe(name);
+        shadowed[e] = slots[slot] - 1;
+        slotOf[e] = slot;
+        slots[slot] = e + 1;
     }
 
     /**
      * Returns whether variable of a given name is defined in the current scope.
-     * @param name
-     * @return
+     * @param name The name.
+     * @return true if it is defined as a local or class-level name.
      */
-    public boolean isDefined(String name) {
-        return classScope.containsKey(name) || localScope.containsKey(name);
+    public boolean isDefined(int name) {
+        return kindOf(name) != null;
     }
 
-    public Kind kindOf(String name) {
-        if(classScope.get(name).kind != null) return classScope.get(name).kind;
-        return localScope.get(name).kind;
+    /**
+     * @param name The name.
+     * @return the kind of the innermost definition of the name, or null.
+     */
+    public Kind kindOf(int name) {
+        return kindOf(name, count);
     }
 
-    public String typeOf(String name) {
-        if(classScope.get(name).type != null) return classScope.get(name).type;
-        return localScope.get(name).type;
+    /**
+     * @param name The name.
+     * @return the type of the innermost definition of the name, or NO_TYPE.
+     */
+    public int typeOf(int name) {
+        return typeOf(name, count);
+    }
 
+    /**
+     * @param name The name.
+     * @return the index of the innermost definition of the name among
+     *         those of its kind, or -1.
+     */
+    public int indexOf(int name) {
+        return indexOf(name, count);
     }
 
+    /*
+     * The lookups below only see the entries before the given limit,
+     * then those of the table below, if there is one.
+     */
+
+    private Kind kindOf(int name, int limit) {
+        int e = lookup(name, limit);
+        if(e != NO_ENTRY) {
+            return KINDS[kinds[e]];
+        }
+        return outer == null ? null : outer.kindOf(name, outerMark);
+    }
+
+    private int typeOf(int name, int limit) {
+        int e = lookup(name, limit);
+        if(e != NO_ENTRY) {
+            return types[e];
+        }
+        return outer == null ? NO_TYPE : outer.typeOf(name, outerMark);
+    }
+
+    private int indexOf(int name, int limit) {
+        int e = lookup(name, limit);
+        if(e != NO_ENTRY) {
+            return indexes[e];
+        }
+        return outer == null ? -1 : outer.indexOf(name, outerMark);
+    }
+
+    /**
+     * @param kind A kind of name.
+     * @return the number of names of that kind currently defined.
+     */
+    public int varCount(Kind kind) {
+        return kindCounts[kind.ordinal()];
+    }
+
+    /**
+     * @return the number of entries, in all scopes, not counting
+     *         those of any table this one is layered over.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Entries are numbered from 0 in order of definition.
+     * @param entry The number of an entry.
+     * @return its name.
+     */
+    public int nameAt(int entry) {
+        return names[entry];
+    }
+
+    /**
+     * @param entry The number of an entry.
+     * @return its type.
+     */
+    public int typeAt(int entry) {
+        return types[entry];
+    }
+
+    /**
+     * @param entry The number of an entry.
+     * @return its kind.
+     */
+    public Kind kindAt(int entry) {
+        return KINDS[kinds[entry]];
+    }
+
+    /**
+     * @return the most recent entry for the name before the limit, or NO_ENTRY.
+     */
+    private int lookup(int name, int limit) {
+        int e = slots[probe(name)] - 1;
+        // Earlier definitions of the name are those it shadows.
+        while(e >= limit) {
+            e = shadowed[e];
+        }
+        return e;
+    }
+
+    /**
+     * @return the slot holding the name, or the empty slot where it belongs.
+     */
+    private int probe(int name) {
+        int mask = slots.length - 1;
+        int i = (name * 0x9E3779B9) >>> shift;
+        int slot;
+        while((slot = slots[i]) != 0 && names[slot - 1] != name) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Double the capacity of the columns and of the table.
+     * Names are placed in the new table in order of their first
+     * definition, so that rollback still empties slots in the reverse
+     * of the order in which they were filled.
+     */
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        types = Arrays.copyOf(types, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+        shadowed = Arrays.copyOf(shadowed, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        slots = new int[capacity * 2];
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(slots.length);
+        for(int e = 0; e < count; e++) {
+            int slot = probe(names[e]);
+            slotOf[e] = slot;
+            slots[slot] = e + 1;
+        }
+    }
 
     public enum Kind {
-        STATIC, FIELD, ARG, VAR, CLASS, FUNC
+        STATIC, FIELD, ARG, VAR, CLASS, FUNC;
+
+        /**
+         * @return true if names of this kind belong to the class
+         *         rather than to a subroutine.
+         */
+        public boolean isClassScope() {
+            return this != ARG && this != VAR;
+        }
     }
 }
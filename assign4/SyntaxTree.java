@@ -0,0 +1,356 @@
+package assign4;
+
+import java.util.Arrays;
+
+/**
+ * The syntax tree of a class, built by the Parser as it parses.
+ *
+ * Nodes are numbered from 0 in the order they were started, so a
+ * node's number is smaller than those of all its descendants, and the
+ * class is node 0. Each node is a row in a set of int arrays: its
+ * kind, its first child, its next sibling, its main token and the span
+ * of tokens it covers. Tokens are referred to by their index in the
+ * order they were read, which is their index in a TokenStream.
+ *
+ * Only the structure of the class is held. The text of names and
+ * constants is found from their tokens, and the type of a declaration
+ * is the token that follows its keyword.
+ */
+public class SyntaxTree {
+    // A missing child or sibling.
+    public static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_DEPTH = 32;
+
+    // Columns of the nodes.
+    private int[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokens;
+    // The first token of each node, and the token after its last.
+    private int[] spanStarts;
+    private int[] spanEnds;
+    private int count;
+
+    // The nodes started but not yet finished, innermost last,
+    // and the last child added to each so far.
+    private int[] open = new int[INITIAL_DEPTH];
+    private int[] lastChildren = new int[INITIAL_DEPTH];
+    private int depth;
+
+    /**
+     * Create an empty tree.
+     */
+    public SyntaxTree() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create an empty tree with room for the given number of nodes.
+     * A class has roughly one node for every two tokens.
+     * @param capacity The number of nodes.
+     */
+    public SyntaxTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        kinds = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokens = new int[capacity];
+        spanStarts = new int[capacity];
+        spanEnds = new int[capacity];
+    }
+
+    /**
+     * Start a node as the last child of the innermost unfinished one.
+     * @param kind The kind of node.
+     * @param token The index of its main token.
+     * @param spanStart The index of its first token.
+     * @return the node.
+     */
+    int start(NodeKind kind, int token, int spanStart) {
+        if(count == kinds.length) {
+            grow();
+        }
+        int node = count++;
+        kinds[node] = kind.ordinal();
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        tokens[node] = token;
+        spanStarts[node] = spanStart;
+        spanEnds[node] = spanStart;
+        if(depth > 0) {
+            int last = lastChildren[depth - 1];
+            if(last == NONE) {
+                firstChildren[open[depth - 1]] = node;
+            }
+            else {
+                nextSiblings[last] = node;
+            }
+            lastChildren[depth - 1] = node;
+        }
+        if(depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+            lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+        }
+        open[depth] = node;
+        lastChildren[depth] = NONE;
+        depth++;
+        return node;
+    }
+
+    /**
+     * Finish the innermost unfinished node.
+     * @param spanEnd The index of the token after its last.
+     */
+    void finish(int spanEnd) {
+        spanEnds[open[--depth]] = spanEnd;
+    }
+
+    /**
+     * @return the number of nodes started but not yet finished.
+     */
+    int openCount() {
+        return depth;
+    }
+
+    /**
+     * Remove every node so that the tree can be built again, keeping
+     * the room it has grown.
+     */
+    public void reset() {
+        count = 0;
+        depth = 0;
+    }
+
+    /**
+     * @return the number of nodes.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the node of the class, or NONE if the tree is empty.
+     */
+    public int root() {
+        return count > 0 ? 0 : NONE;
+    }
+
+    /**
+     * A tree is complete once every node started has been finished,
+     * which is not so if the parse failed.
+     * @return true if the tree is complete.
+     */
+    public boolean isComplete() {
+        return count > 0 && depth == 0;
+    }
+
+    /**
+     * @param node A node.
+     * @return its kind.
+     */
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    /**
+     * @param node A node.
+     * @return its first child, or NONE.
+     */
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @param node A node.
+     * @return the next child of its parent, or NONE.
+     */
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @param node A node.
+     * @return the index of its main token; see NodeKind.
+     */
+    public int token(int node) {
+        return tokens[node];
+    }
+
+    /**
+     * @param node A node.
+     * @return the index of its first token.
+     */
+    public int spanStart(int node) {
+        return spanStarts[node];
+    }
+
+    /**
+     * @param node A node.
+     * @return the index of the token after its last.
+     */
+    public int spanEnd(int node) {
+        return spanEnds[node];
+    }
+
+    /**
+     * @param node A node.
+     * @return the number of its children.
+     */
+    public int childCount(int node) {
+        int n = 0;
+        for(int c = firstChildren[node]; c != NONE; c = nextSiblings[c]) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return a cursor at the root of the tree.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Visit every node of the tree in document order.
+     * The walk uses a cursor, so the depth of the tree does not
+     * deepen the stack.
+     * @param visitor The visitor.
+     */
+    public void walk(Visitor visitor) {
+        if(count == 0) {
+            return;
+        }
+        Cursor cursor = cursor();
+        boolean descend = visitor.enter(this, cursor.node());
+        while(true) {
+            if(descend && cursor.gotoFirstChild()) {
+                descend = visitor.enter(this, cursor.node());
+                continue;
+            }
+            // Leave nodes until one has a next sibling.
+            visitor.leave(this, cursor.node());
+            while(!cursor.gotoNextSibling()) {
+                if(!cursor.gotoParent()) {
+                    return;
+                }
+                visitor.leave(this, cursor.node());
+            }
+            descend = visitor.enter(this, cursor.node());
+        }
+    }
+
+    /**
+     * Double the capacity of the columns.
+     */
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        tokens = Arrays.copyOf(tokens, capacity);
+        spanStarts = Arrays.copyOf(spanStarts, capacity);
+        spanEnds = Arrays.copyOf(spanEnds, capacity);
+    }
+
+    /**
+     * Receives the nodes of a tree as it is walked.
+     */
+    public interface Visitor {
+        /**
+         * Called before the children of a node are visited.
+         * @param tree The tree.
+         * @param node The node.
+         * @return true to visit the node's children, false to skip them.
+         */
+        boolean enter(SyntaxTree tree, int node);
+
+        /**
+         * Called after the children of a node have been visited.
+         * @param tree The tree.
+         * @param node The node.
+         */
+        default void leave(SyntaxTree tree, int node) {
+        }
+    }
+
+    /**
+     * A position in the tree that can move to a node's first child,
+     * its next sibling or its parent. The path from the root is kept
+     * by the cursor, so nodes need not record their parents.
+     */
+    public class Cursor {
+        private int[] path = new int[INITIAL_DEPTH];
+        private int length;
+
+        private Cursor() {
+            path[0] = root();
+            length = 1;
+        }
+
+        /**
+         * @return the current node.
+         */
+        public int node() {
+            return path[length - 1];
+        }
+
+        /**
+         * @return the kind of the current node.
+         */
+        public NodeKind kind() {
+            return SyntaxTree.this.kind(node());
+        }
+
+        /**
+         * @return the depth of the current node, which is 0 at the root.
+         */
+        public int depth() {
+            return length - 1;
+        }
+
+        /**
+         * Move to the first child of the current node.
+         * @return false, without moving, if it has no children.
+         */
+        public boolean gotoFirstChild() {
+            int child = firstChildren[node()];
+            if(child == NONE) {
+                return false;
+            }
+            if(length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = child;
+            return true;
+        }
+
+        /**
+         * Move to the next sibling of the current node.
+         * @return false, without moving, if it has none.
+         */
+        public boolean gotoNextSibling() {
+            int sibling = length > 1 ? nextSiblings[node()] : NONE;
+            if(sibling == NONE) {
+                return false;
+            }
+            path[length - 1] = sibling;
+            return true;
+        }
+
+        /**
+         * Move to the parent of the current node.
+         * @return false, without moving, at the root.
+         */
+        public boolean gotoParent() {
+            if(length == 1) {
+                return false;
+            }
+            length--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package benchmark;
+
+import java.io.IOException;
+
+/**
+ * Run the whole benchmark suite.
+ *
+ * Usage: java benchmark.Benchmarks [--json FILE] [--filter REGEX]
+ *            [--warmup N] [--iterations N] [--time MS]
+ * See Harness for the options. ScalingBenchmark and IncrementalBenchmark
+ * measure whole runs and edit latencies, and are run on their own.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws IOException {
+        Harness harness = new Harness(args);
+        Iterable<Inputs.Input> inputs = Inputs.load();
+        TokenizerBenchmark.addTo(harness, inputs);
+        ParserBenchmark.addTo(harness, inputs);
+        SymbolTableBenchmark.addTo(harness);
+        KeywordBenchmark.addTo(harness);
+        harness.run();
+    }
+}
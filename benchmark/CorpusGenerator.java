@@ -0,0 +1,887 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generate a corpus of valid Jack classes, of any size, for measuring
+ * throughput, memory use and scaling.
+ *
+ * Every class parses successfully with this parser, which is stricter
+ * than the Jack language in one way: a name used in a term must be
+ * declared in the class, so the only classes a term can refer to are
+ * its own and those of the variables in scope. Calls on other classes
+ * and on the Jack OS appear in do statements. Subroutines are called
+ * with the right number of arguments, functions use neither fields
+ * nor this, and only variables of type Array are indexed.
+ *
+ * Each class is made from its own random stream, derived from the seed
+ * and its number, so a seed gives the same corpus whatever the number
+ * of jobs.
+ *
+ * Usage: java benchmark.CorpusGenerator --out DIR [options]
+ *     --classes N       number of classes (default 100)
+ *     --size BYTES      instead, classes up to a total size, such as 1M or 10G
+ *     --subroutines N   subroutines per class (default 20)
+ *     --statements N    statements per subroutine body (default 8)
+ *     --depth N         nesting depth of statements (default 2)
+ *     --expr-depth N    nesting depth of expressions (default 2)
+ *     --vocabulary N    number of distinct variable names (default 200)
+ *     --comments P      chance of a comment before each statement (default 0.1)
+ *     --line-length N   the length at which lines are wrapped (default 80)
+ *     --seed N          the random seed (default 1)
+ *     --jobs N          classes to generate at a time (default 1)
+ */
+public class CorpusGenerator {
+    private static final String USAGE = "Usage: java benchmark.CorpusGenerator --out DIR [options]";
+    // Classes per directory, so that no directory gets too large.
+    private static final int FILES_PER_DIRECTORY = 1000;
+    // How many of the preceding classes a class refers to.
+    private static final int REFERENCE_WINDOW = 4;
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ne", "ru", "ta", "vo", "zi",
+        "pe", "su", "da", "ho", "ji", "we", "xa", "bu",
+    };
+    // The keywords of Jack, kept apart from the tokenizer's own table
+    // so that a corpus cannot share its mistakes.
+    private static final Set<String> KEYWORDS = Set.of(
+        "class", "constructor", "function", "method", "field", "static", "var",
+        "int", "char", "boolean", "void", "true", "false", "null", "this",
+        "let", "do", "if", "else", "while", "return");
+    private static final String[] PRIMITIVES = { "int", "char", "boolean" };
+    private static final String[] BINARY_OPS = { "+", "-", "*", "/", "&", "|", "<", ">", "=" };
+    private static final String[] COMPARISONS = { "<", ">", "=" };
+
+    private int classes = 100;
+    private long size;
+    private int subroutines = 20;
+    private int statements = 8;
+    private int depth = 2;
+    private int exprDepth = 2;
+    private int vocabularySize = 200;
+    private double comments = 0.1;
+    private int lineLength = 80;
+    private long seed = 1;
+    private int jobs = 1;
+    private Path out;
+    private String[] vocabulary;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CorpusGenerator generator = new CorpusGenerator();
+        try {
+            generator.configure(args);
+        }
+        catch(IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return;
+        }
+        generator.run();
+    }
+
+    /**
+     * Set the options from the command line.
+     * @throws IllegalArgumentException if an option is not valid.
+     */
+    private void configure(String[] args) {
+        for(int i = 0; i < args.length; i += 2) {
+            if(i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            try {
+                switch(args[i]) {
+                    case "--out" -> out = Paths.get(value);
+                    case "--classes" -> classes = Integer.parseInt(value);
+                    case "--size" -> size = parseSize(value);
+                    case "--subroutines" -> subroutines = Integer.parseInt(value);
+                    case "--statements" -> statements = Integer.parseInt(value);
+                    case "--depth" -> depth = Integer.parseInt(value);
+                    case "--expr-depth" -> exprDepth = Integer.parseInt(value);
+                    case "--vocabulary" -> vocabularySize = Integer.parseInt(value);
+                    case "--comments" -> comments = Double.parseDouble(value);
+                    case "--line-length" -> lineLength = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--jobs" -> jobs = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("Not a number: " + value);
+            }
+        }
+        if(out == null) {
+            throw new IllegalArgumentException("No output directory");
+        }
+        if(classes < 1 || subroutines < 1 || statements < 0 || depth < 0 || exprDepth < 0 ||
+                vocabularySize < 1 || comments < 0 || comments > 1 || lineLength < 20 || jobs < 1) {
+            throw new IllegalArgumentException("Option out of range");
+        }
+        vocabulary = new String[vocabularySize];
+        for(int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = word(i);
+        }
+    }
+
+    /**
+     * @return a size such as 500K, 1M or 10G, in bytes.
+     */
+    static long parseSize(String value) {
+        long unit = switch(Character.toUpperCase(value.charAt(value.length() - 1))) {
+            case 'K' -> 1L << 10;
+            case 'M' -> 1L << 20;
+            case 'G' -> 1L << 30;
+            default -> 1;
+        };
+        String digits = unit == 1 ? value : value.substring(0, value.length() - 1);
+        return Long.parseLong(digits) * unit;
+    }
+
+    /**
+     * Generate the classes and write them in order, stopping at the
+     * number of classes or the total size asked for.
+     */
+    private void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        long lines = 0;
+        int written = 0;
+        int limit = size > 0 ? Integer.MAX_VALUE : classes;
+        ExecutorService workers = Executors.newFixedThreadPool(jobs);
+        try {
+            // Classes being generated, in order; each is written only
+            // when all those before it have been.
+            Deque<Future<String>> pending = new ArrayDeque<>();
+            int next = 0;
+            while(written < limit && (size == 0 || bytes < size)) {
+                while(next < limit && pending.size() < jobs * 4) {
+                    int index = next++;
+                    pending.add(workers.submit(() -> generateClass(index)));
+                }
+                String text = pending.remove().get();
+                Path file = fileFor(written);
+                Files.createDirectories(file.getParent());
+                try(Writer w = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+                    w.write(text);
+                }
+                written++;
+                bytes += text.length();
+                lines += text.chars().filter(c -> c == '\n').count();
+            }
+        }
+        catch(ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d classes, %d lines, %d bytes in %.1f s (%.1f MB/s)%n",
+                          written, lines, bytes, seconds, bytes / seconds / 1e6);
+    }
+
+    /**
+     * @return the file for the class with the given number.
+     */
+    private Path fileFor(int index) {
+        Path dir = size > 0 || classes > FILES_PER_DIRECTORY
+                ? out.resolve(String.format("d%05d", index / FILES_PER_DIRECTORY))
+                : out;
+        return dir.resolve(className(index) + ".jack");
+    }
+
+    private static String className(int index) {
+        return "Unit" + index;
+    }
+
+    /**
+     * @return the i'th word of the vocabulary, which is never a keyword.
+     */
+    private static String word(int i) {
+        StringBuilder w = new StringBuilder();
+        int n = i;
+        do {
+            w.append(SYLLABLES[n % SYLLABLES.length]);
+            n /= SYLLABLES.length;
+        } while(n > 0);
+        if(w.length() < 4) {
+            w.append("n");
+        }
+        return KEYWORDS.contains(w.toString()) ? w + "x" : w.toString();
+    }
+
+    /**
+     * @return the seed of one of the random streams of a class.
+     */
+    private long seedFor(int index, int stream) {
+        // SplitMix64 finalizer over the seed, class and stream.
+        long z = seed * 0x9E3779B97F4A7C15L + index * 0xBF58476D1CE4E5B9L + stream;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A subroutine as seen by its callers.
+     */
+    private static class Routine {
+        final String kind;
+        final String type;
+        final String name;
+        final String[] paramTypes;
+
+        Routine(String kind, String type, String name, String[] paramTypes) {
+            this.kind = kind;
+            this.type = type;
+            this.name = name;
+            this.paramTypes = paramTypes;
+        }
+    }
+
+    /**
+     * The subroutines of a class. These depend only on the class's
+     * number, so other classes can find them without generating it.
+     */
+    private List<Routine> routinesOf(int index) {
+        Random r = new Random(seedFor(index, 0));
+        List<Routine> routines = new ArrayList<>();
+        routines.add(new Routine("constructor", className(index), "new", paramTypes(r)));
+        for(int i = 1; i < subroutines; i++) {
+            String kind = r.nextBoolean() ? "method" : "function";
+            String type = switch(r.nextInt(6)) {
+                case 0, 1 -> "void";
+                case 2 -> "boolean";
+                case 3 -> "Array";
+                default -> "int";
+            };
+            routines.add(new Routine(kind, type, vocabulary[r.nextInt(vocabulary.length)] + i, paramTypes(r)));
+        }
+        return routines;
+    }
+
+    private static String[] paramTypes(Random r) {
+        String[] types = new String[r.nextInt(4)];
+        for(int i = 0; i < types.length; i++) {
+            types[i] = r.nextInt(4) == 0 ? "Array" : PRIMITIVES[r.nextInt(PRIMITIVES.length)];
+        }
+        return types;
+    }
+
+    /**
+     * @return the source of the class with the given number.
+     */
+    private String generateClass(int index) {
+        return new ClassWriter(index).write();
+    }
+
+    /**
+     * A variable in scope.
+     */
+    private static class Variable {
+        final String name;
+        final String type;
+        // Whether this is a field, and so not usable in a function.
+        final boolean field;
+
+        Variable(String name, String type, boolean field) {
+            this.name = name;
+            this.type = type;
+            this.field = field;
+        }
+    }
+
+    /**
+     * Writes one class, wrapping lines as they grow too long.
+     */
+    private class ClassWriter {
+        private final int index;
+        private final String name;
+        private final Random r;
+        private final List<Routine> routines;
+        // The classes referred to, and their subroutines.
+        private final List<String> others = new ArrayList<>();
+        private final List<List<Routine>> otherRoutines = new ArrayList<>();
+        private final List<Variable> classVariables = new ArrayList<>();
+        private final List<Variable> scope = new ArrayList<>();
+        private final StringBuilder s = new StringBuilder();
+        // The start of the current line, its indent, and the last character written.
+        private int lineStart;
+        private int indent;
+        private char last = '\n';
+        // The subroutine being written.
+        private Routine routine;
+        private int routineNumber;
+
+        ClassWriter(int index) {
+            this.index = index;
+            this.name = className(index);
+            this.r = new Random(seedFor(index, 1));
+            this.routines = routinesOf(index);
+            for(int other = Math.max(0, index - REFERENCE_WINDOW); other < index; other++) {
+                others.add(className(other));
+                otherRoutines.add(routinesOf(other));
+            }
+        }
+
+        String write() {
+            comment(true);
+            token("class");
+            token(name);
+            token("{");
+            indent++;
+            newline();
+            int fields = 1 + r.nextInt(4);
+            for(int i = 0; i < fields; i++) {
+                classVarDec("field", i);
+            }
+            int statics = r.nextInt(3);
+            for(int i = 0; i < statics; i++) {
+                classVarDec("static", fields + i);
+            }
+            for(routineNumber = 0; routineNumber < routines.size(); routineNumber++) {
+                newline();
+                subroutine(routines.get(routineNumber));
+            }
+            indent--;
+            newline();
+            token("}");
+            newline();
+            return s.toString();
+        }
+
+        private void classVarDec(String kind, int number) {
+            String type = anyType();
+            token(kind);
+            token(type);
+            int count = 1 + r.nextInt(3);
+            for(int i = 0; i < count; i++) {
+                if(i > 0) {
+                    token(",");
+                }
+                String variable = vocabulary[r.nextInt(vocabulary.length)] + "F" + number + "x" + i;
+                token(variable);
+                classVariables.add(new Variable(variable, type, kind.equals("field")));
+            }
+            token(";");
+            newline();
+        }
+
+        private void subroutine(Routine routine) {
+            this.routine = routine;
+            scope.clear();
+            for(Variable v : classVariables) {
+                if(!v.field || !isFunction()) {
+                    scope.add(v);
+                }
+            }
+            comment(false);
+            token(routine.kind);
+            token(routine.type);
+            token(routine.name);
+            token("(");
+            List<String> names = distinctNames(routine.paramTypes.length + 8);
+            for(int i = 0; i < routine.paramTypes.length; i++) {
+                if(i > 0) {
+                    token(",");
+                }
+                token(routine.paramTypes[i]);
+                token(names.get(i));
+                scope.add(new Variable(names.get(i), routine.paramTypes[i], false));
+            }
+            token(")");
+            token("{");
+            indent++;
+            newline();
+            int next = routine.paramTypes.length;
+            int varDecs = 1 + r.nextInt(3);
+            for(int d = 0; d < varDecs && next < names.size(); d++) {
+                String type = anyType();
+                token("var");
+                token(type);
+                int count = 1 + r.nextInt(3);
+                for(int i = 0; i < count && next < names.size(); i++) {
+                    if(i > 0) {
+                        token(",");
+                    }
+                    token(names.get(next));
+                    scope.add(new Variable(names.get(next), type, false));
+                    next++;
+                }
+                token(";");
+                newline();
+            }
+            statements(statementCount(), depth);
+            returnStatement();
+            indent--;
+            newline();
+            token("}");
+            newline();
+        }
+
+        private int statementCount() {
+            return statements == 0 ? 0 : 1 + r.nextInt(2 * statements);
+        }
+
+        private boolean isFunction() {
+            return routine.kind.equals("function");
+        }
+
+        /**
+         * @return the given number of names from the vocabulary, all
+         *         different, made unique by a suffix if the vocabulary
+         *         is too small.
+         */
+        private List<String> distinctNames(int count) {
+            List<String> names = new ArrayList<>();
+            int first = r.nextInt(vocabulary.length);
+            for(int i = 0; i < count; i++) {
+                String word = vocabulary[(first + i) % vocabulary.length];
+                names.add(i < vocabulary.length ? word : word + i);
+            }
+            return names;
+        }
+
+        private String anyType() {
+            int choice = r.nextInt(10);
+            if(choice < 5) {
+                return PRIMITIVES[choice % PRIMITIVES.length];
+            }
+            if(choice < 8 || others.isEmpty()) {
+                return "Array";
+            }
+            return others.get(r.nextInt(others.size()));
+        }
+
+        private void statements(int count, int depth) {
+            for(int i = 0; i < count; i++) {
+                comment(false);
+                int choice = r.nextInt(20);
+                if(choice < 3 && depth > 0) {
+                    ifStatement(depth);
+                }
+                else if(choice < 5 && depth > 0) {
+                    whileStatement(depth);
+                }
+                else if(choice < 11) {
+                    doStatement();
+                }
+                else {
+                    letStatement();
+                }
+            }
+        }
+
+        private void ifStatement(int depth) {
+            token("if");
+            token("(");
+            condition();
+            token(")");
+            block(depth);
+            if(r.nextBoolean()) {
+                token("else");
+                block(depth);
+            }
+            newline();
+        }
+
+        private void whileStatement(int depth) {
+            token("while");
+            token("(");
+            condition();
+            token(")");
+            block(depth);
+            newline();
+        }
+
+        private void block(int depth) {
+            token("{");
+            indent++;
+            newline();
+            statements(1 + r.nextInt(3), depth - 1);
+            indent--;
+            dedent();
+            token("}");
+        }
+
+        private void letStatement() {
+            Variable target = scope.isEmpty() ? null : scope.get(r.nextInt(scope.size()));
+            if(target == null) {
+                doStatement();
+                return;
+            }
+            token("let");
+            token(target.name);
+            if(target.type.equals("Array") && r.nextBoolean()) {
+                token("[");
+                expression(exprDepth);
+                token("]");
+                token("=");
+                expression(exprDepth);
+            }
+            else {
+                token("=");
+                valueOf(target.type, exprDepth);
+            }
+            token(";");
+            newline();
+        }
+
+        /**
+         * Write an expression suitable for a variable of the given type.
+         * @param depth The depth to which it may nest.
+         */
+        private void valueOf(String type, int depth) {
+            if(isPrimitive(type)) {
+                expression(depth);
+                return;
+            }
+            Variable same = variableOfType(type);
+            if(same != null && r.nextBoolean()) {
+                token(same.name);
+            }
+            else if(type.equals(name) && !isFunction()) {
+                token("this");
+            }
+            else {
+                token("null");
+            }
+        }
+
+        private void doStatement() {
+            token("do");
+            int choice = r.nextInt(10);
+            Variable object = objectVariable();
+            if(choice < 4) {
+                ownCall(false, exprDepth);
+            }
+            else if(choice < 6 && !others.isEmpty()) {
+                int other = r.nextInt(others.size());
+                Routine callee = calleeOf(otherRoutines.get(other), "function", false);
+                if(callee == null) {
+                    osCall();
+                }
+                else {
+                    token(others.get(other));
+                    token(".");
+                    call(callee, exprDepth);
+                }
+            }
+            else if(choice < 8 && object != null) {
+                Routine callee = calleeOf(routinesOfType(object.type), "method", false);
+                if(callee == null) {
+                    osCall();
+                }
+                else {
+                    token(object.name);
+                    token(".");
+                    call(callee, exprDepth);
+                }
+            }
+            else {
+                osCall();
+            }
+            token(";");
+            newline();
+        }
+
+        private void osCall() {
+            token("Output");
+            token(".");
+            if(r.nextBoolean()) {
+                token("printInt");
+                token("(");
+                expression(exprDepth);
+                token(")");
+            }
+            else {
+                token("printString");
+                token("(");
+                token('"' + vocabulary[r.nextInt(vocabulary.length)] + " " +
+                      vocabulary[r.nextInt(vocabulary.length)] + '"');
+                token(")");
+            }
+        }
+
+        /**
+         * Call a subroutine of this class: a method or constructor of
+         * this object from a method, otherwise a function through the
+         * class name. Unqualified calls in a term must be to subroutines
+         * declared so far.
+         * @param value Whether the call is in an expression, and so
+         *              must return a value.
+         * @param depth The depth to which its arguments may nest.
+         */
+        private void ownCall(boolean value, int depth) {
+            if(!isFunction() && r.nextBoolean()) {
+                List<Routine> declared = routines.subList(1, routineNumber + 1);
+                Routine callee = calleeOf(declared, "method", value);
+                if(callee != null) {
+                    call(callee, depth);
+                    return;
+                }
+            }
+            Routine callee = calleeOf(routines, "function", value);
+            token(name);
+            token(".");
+            call(callee != null ? callee : routines.get(0), depth);
+        }
+
+        /**
+         * @return a random subroutine of the given kind, returning a
+         *         value if asked, or null if there is none.
+         */
+        private Routine calleeOf(List<Routine> candidates, String kind, boolean value) {
+            int start = r.nextInt(Math.max(1, candidates.size()));
+            for(int i = 0; i < candidates.size(); i++) {
+                Routine c = candidates.get((start + i) % candidates.size());
+                if(c.kind.equals(kind) && (!value || isPrimitive(c.type))) {
+                    return c;
+                }
+            }
+            return null;
+        }
+
+        private void call(Routine callee, int depth) {
+            token(callee.name);
+            token("(");
+            for(int i = 0; i < callee.paramTypes.length; i++) {
+                if(i > 0) {
+                    token(",");
+                }
+                valueOf(callee.paramTypes[i], depth);
+            }
+            token(")");
+        }
+
+        private void returnStatement() {
+            comment(false);
+            token("return");
+            if(routine.kind.equals("constructor")) {
+                token("this");
+            }
+            else if(!routine.type.equals("void")) {
+                valueOf(routine.type, exprDepth);
+            }
+            token(";");
+        }
+
+        private void condition() {
+            expression(exprDepth - 1);
+            token(COMPARISONS[r.nextInt(COMPARISONS.length)]);
+            expression(exprDepth - 1);
+        }
+
+        private void expression(int depth) {
+            term(depth);
+            int more = r.nextInt(4) == 0 ? 1 + r.nextInt(2) : 0;
+            for(int i = 0; i < more; i++) {
+                token(BINARY_OPS[r.nextInt(BINARY_OPS.length)]);
+                term(depth);
+            }
+        }
+
+        private void term(int depth) {
+            // Mostly simple terms, as in code written by hand.
+            int choice = depth > 0 ? r.nextInt(20) : r.nextInt(4);
+            switch(choice) {
+                case 0, 1, 12, 13, 14, 15, 16, 17, 18, 19 -> {
+                    Variable v = primitiveVariable();
+                    token(v != null ? v.name : String.valueOf(r.nextInt(100)));
+                }
+                case 2 -> token(String.valueOf(r.nextInt(32768)));
+                case 3 -> token(r.nextBoolean() ? "true" : "false");
+                case 4, 5 -> {
+                    Variable array = variableOfType("Array");
+                    if(array == null) {
+                        term(depth - 1);
+                    }
+                    else {
+                        token(array.name);
+                        token("[");
+                        expression(depth - 1);
+                        token("]");
+                    }
+                }
+                case 6 -> {
+                    token(r.nextBoolean() ? "-" : "~");
+                    term(depth - 1);
+                }
+                case 7, 8 -> {
+                    token("(");
+                    expression(depth - 1);
+                    token(")");
+                }
+                case 9 -> {
+                    Variable object = objectVariable();
+                    Routine callee = object == null ? null
+                            : calleeOf(routinesOfType(object.type), "method", true);
+                    if(callee == null) {
+                        term(depth - 1);
+                    }
+                    else {
+                        token(object.name);
+                        token(".");
+                        call(callee, depth - 1);
+                    }
+                }
+                case 10, 11 -> ownCall(true, depth - 1);
+            }
+        }
+
+        private Variable primitiveVariable() {
+            int start = r.nextInt(Math.max(1, scope.size()));
+            for(int i = 0; i < scope.size(); i++) {
+                Variable v = scope.get((start + i) % scope.size());
+                if(isPrimitive(v.type)) {
+                    return v;
+                }
+            }
+            return null;
+        }
+
+        private Variable variableOfType(String type) {
+            int start = r.nextInt(Math.max(1, scope.size()));
+            for(int i = 0; i < scope.size(); i++) {
+                Variable v = scope.get((start + i) % scope.size());
+                if(v.type.equals(type)) {
+                    return v;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return a variable whose type is one of the other classes, or null.
+         */
+        private Variable objectVariable() {
+            int start = r.nextInt(Math.max(1, scope.size()));
+            for(int i = 0; i < scope.size(); i++) {
+                Variable v = scope.get((start + i) % scope.size());
+                if(others.contains(v.type)) {
+                    return v;
+                }
+            }
+            return null;
+        }
+
+        private List<Routine> routinesOfType(String type) {
+            return otherRoutines.get(others.indexOf(type));
+        }
+
+        private boolean isPrimitive(String type) {
+            return type.equals("int") || type.equals("char") || type.equals("boolean");
+        }
+
+        /**
+         * Perhaps write a comment: a line comment, or a block comment
+         * over one or more lines.
+         * @param always Whether to write one whatever the comment density.
+         */
+        private void comment(boolean always) {
+            if(!always && r.nextDouble() >= comments) {
+                return;
+            }
+            int choice = r.nextInt(10);
+            if(choice < 5) {
+                raw("// " + phrase());
+            }
+            else if(choice < 8) {
+                raw("/* " + phrase() + " */");
+            }
+            else {
+                raw("/**");
+                int lines = 1 + r.nextInt(3);
+                for(int i = 0; i < lines; i++) {
+                    raw(" * " + phrase());
+                }
+                raw(" */");
+            }
+        }
+
+        private String phrase() {
+            StringBuilder p = new StringBuilder();
+            int words = 2 + r.nextInt(6);
+            for(int i = 0; i < words; i++) {
+                if(i > 0) {
+                    p.append(' ');
+                }
+                p.append(vocabulary[r.nextInt(vocabulary.length)]);
+            }
+            return p.toString();
+        }
+
+        /**
+         * Write a line of its own, at the current indent.
+         */
+        private void raw(String line) {
+            if(last != '\n') {
+                newline();
+            }
+            startLine();
+            s.append(line);
+            newline();
+        }
+
+        /**
+         * Write a token, separated from the last by a space where
+         * that reads naturally, and wrapped onto a new line if the
+         * line would be too long.
+         */
+        private void token(String t) {
+            char first = t.charAt(0);
+            boolean space = last != '\n' && last != '(' && last != '[' && last != '.' &&
+                    first != ')' && first != ']' && first != ';' && first != ',' && first != '.' &&
+                    !((first == '(' || first == '[') && Character.isJavaIdentifierPart(last));
+            if(last != '\n' && s.length() - lineStart + t.length() + 1 > lineLength) {
+                newline();
+                startLine();
+                // Continuation lines are indented further.
+                s.append("    ");
+            }
+            else if(last == '\n') {
+                startLine();
+            }
+            else if(space) {
+                s.append(' ');
+            }
+            s.append(t);
+            last = t.charAt(t.length() - 1);
+        }
+
+        private void startLine() {
+            for(int i = 0; i < indent; i++) {
+                s.append("    ");
+            }
+        }
+
+        private void newline() {
+            s.append('\n');
+            lineStart = s.length();
+            last = '\n';
+        }
+
+        /**
+         * Remove one level of indent from the current line, if it is empty.
+         */
+        private void dedent() {
+            if(last == '\n') {
+                return;
+            }
+            newline();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package benchmark;
+
+import assign4.ParseClient;
+import assign4.ParseServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the latency of parsing with a cold run of Main, as a build
+ * script does, with the latency of asking a warm ParseServer.
+ *
+ * Three ways of parsing the same files are timed:
+ *     cli       a new JVM running Main
+ *     client    a new JVM running ParseClient, so JVM startup is still
+ *               paid, but only for the small client
+ *     request   a request over a connection that is kept open, which
+ *               is the cost of the parse to a caller that stays resident
+ *               or talks to the socket directly
+ * The server runs in this JVM on a free loopback port, and is warmed
+ * up before it is measured.
+ *
+ * Usage: java benchmark.DaemonBenchmark [file.jack OR dir [runs]]
+ * The files default to those in test/, and each JVM is started runs
+ * times; the default is 20.
+ */
+public class DaemonBenchmark {
+    private static final int DEFAULT_RUNS = 20;
+    private static final int WARMUP_REQUESTS = 2_000;
+    private static final int MEASURED_REQUESTS = 1_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String path = new File(args.length > 0 ? args[0] : "test").getAbsolutePath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try(ParseServer server = new ParseServer(address, 1, null)) {
+            Thread serving = new Thread(() -> {
+                try {
+                    server.serve();
+                }
+                catch(IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            serving.setDaemon(true);
+            serving.start();
+            int port = ((InetSocketAddress) server.getAddress()).getPort();
+
+            long[] requests = new long[MEASURED_REQUESTS];
+            try(ParseClient client = new ParseClient(server.getAddress())) {
+                String request = "PARSE " + path;
+                List<String> expected = client.request(request, null);
+                if(expected.isEmpty() || expected.get(0).startsWith("ERROR")) {
+                    throw new IllegalArgumentException("Cannot parse " + path + ": " + expected);
+                }
+                for(int i = 0; i < WARMUP_REQUESTS; i++) {
+                    client.request(request, null);
+                }
+                for(int i = 0; i < MEASURED_REQUESTS; i++) {
+                    long start = System.nanoTime();
+                    List<String> response = client.request(request, null);
+                    requests[i] = System.nanoTime() - start;
+                    if(!response.equals(expected)) {
+                        throw new IllegalStateException("Response changed: " + response);
+                    }
+                }
+            }
+
+            long[] cli = launch(runs, "assign4.Main", path);
+            long[] clients = launch(runs, "assign4.ParseClient", "--port", String.valueOf(port), path);
+
+            System.out.printf("%s, %d runs of each JVM, %d requests%n", path, runs, MEASURED_REQUESTS);
+            System.out.printf("%-10s %10s %10s %10s%n", "parse", "p50 ms", "p99 ms", "max ms");
+            report("cli", cli);
+            report("client", clients);
+            report("request", requests);
+        }
+    }
+
+    /**
+     * Run a class in a new JVM with this one's class path, again and again.
+     * @param runs The number of times to run it.
+     * @param args The class and its arguments.
+     * @return the time taken by each run, from starting the JVM to its exit.
+     */
+    private static long[] launch(int runs, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+        long[] times = new long[runs];
+        for(int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            int status = builder.start().waitFor();
+            times[i] = System.nanoTime() - start;
+            if(status != 0) {
+                throw new IllegalStateException(String.join(" ", command) + " exited with " + status);
+            }
+        }
+        return times;
+    }
+
+    private static void report(String name, long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s %10.3f %10.3f %10.3f%n", name,
+                          sorted[sorted.length / 2] / 1e6,
+                          sorted[sorted.length * 99 / 100] / 1e6,
+                          sorted[sorted.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import assign4.BatchParser;
+import assign4.ParseResult;
+
+/**
+ * Check that very long expressions, argument lists and chains of
+ * unary operators parse without overflowing the stack, as generated
+ * code may hold them: the Parser takes each with a loop, so only
+ * nesting deepens its stack, never length.
+ *
+ * Each class is parsed reporting the first error and reporting them
+ * all, and must parse successfully; otherwise, or on a
+ * StackOverflowError, the exit status is 1.
+ *
+ * Usage: java benchmark.DeepInputCheck [count]
+ * The count, of terms, arguments and operators, defaults to 100000.
+ */
+public class DeepInputCheck {
+    private static final int DEFAULT_COUNT = 100_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT;
+        int failures = 0;
+        failures += check("expression", count, body(count, "let x = x", " + x", ";"));
+        failures += check("argument list", count, body(count, "do Deep.many(x", ", x", ");"));
+        failures += check("unary chain", count, body(count, "let x = ", "-", "x;"));
+        if(failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return a statement made of the start, the repeated part, count - 1
+     *         times, and the end, within a class that declares x.
+     */
+    private static String body(int count, String start, String repeated, String end) {
+        StringBuilder s = new StringBuilder();
+        s.append("class Deep { function int many(int a) { var int x; let x = 1; ").append(start);
+        s.append(repeated.repeat(count - 1));
+        s.append(end).append(" return x; } }");
+        return s.toString();
+    }
+
+    /**
+     * Parse a class both ways.
+     * @return the number of the ways in which it failed.
+     */
+    private static int check(String what, int count, String source) {
+        int failures = 0;
+        for(boolean allErrors : new boolean[]{ false, true }) {
+            String mode = allErrors ? "all errors" : "first error";
+            try {
+                long start = System.nanoTime();
+                ParseResult result = new BatchParser(1, allErrors).parse("Deep.jack", source);
+                double millis = (System.nanoTime() - start) / 1e6;
+                if(result.ok) {
+                    System.out.printf("ok    %s of %d, %s, in %.1f ms%n", what, count, mode, millis);
+                }
+                else {
+                    System.out.printf("FAIL  %s of %d, %s: %s%n", what, count, mode, result);
+                    failures++;
+                }
+            }
+            catch(StackOverflowError ex) {
+                System.out.printf("FAIL  %s of %d, %s: stack overflow%n", what, count, mode);
+                failures++;
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,377 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness in the manner of JMH, which needs no
+ * build tooling: each case is warmed up, then measured over several
+ * timed iterations, and the scores, their error and the allocation
+ * and collections seen during measurement are reported.
+ *
+ * Results are printed as a table and can be written as JSON in the
+ * layout JMH uses, so that runs on different commits can be compared
+ * with the same tools.
+ *
+ * Options:
+ *     --json FILE      write the results to FILE
+ *     --filter REGEX   only run cases whose name matches
+ *     --warmup N       warmup iterations (default 5)
+ *     --iterations N   measured iterations (default 5)
+ *     --time MS        length of each iteration (default 500)
+ */
+public class Harness {
+    /**
+     * One invocation of a benchmarked operation.
+     */
+    public interface Workload {
+        /**
+         * Perform the operation once.
+         * @return the number of units of work done, such as tokens
+         *         read or bytes parsed.
+         */
+        long run();
+    }
+
+    /**
+     * How a score is expressed.
+     */
+    public enum Mode {
+        // Units of work per second, divided by the unit's scale.
+        THROUGHPUT("thrpt"),
+        // Nanoseconds per unit of work.
+        AVERAGE_TIME("avgt");
+
+        private final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A benchmark case: a workload on a particular input.
+     */
+    private static class Case {
+        final String name;
+        final Map<String, String> params;
+        final Mode mode;
+        final String unit;
+        final double scale;
+        final Workload workload;
+
+        Case(String name, Map<String, String> params, Mode mode, String unit, double scale,
+             Workload workload) {
+            this.name = name;
+            this.params = params;
+            this.mode = mode;
+            this.unit = unit;
+            this.scale = scale;
+            this.workload = workload;
+        }
+
+        String label() {
+            return params.isEmpty() ? name : name + ":" + String.join(",", params.values());
+        }
+    }
+
+    /**
+     * The measurements of a case.
+     */
+    private static class Result {
+        final Case c;
+        final double[] scores;
+        final double allocPerUnit;
+        final double allocRate;
+        final long gcCount;
+        final long gcTime;
+
+        Result(Case c, double[] scores, double allocPerUnit, double allocRate,
+               long gcCount, long gcTime) {
+            this.c = c;
+            this.scores = scores;
+            this.allocPerUnit = allocPerUnit;
+            this.allocRate = allocRate;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+
+        double mean() {
+            double sum = 0;
+            for(double s : scores) {
+                sum += s;
+            }
+            return sum / scores.length;
+        }
+
+        /**
+         * @return the half-width of the 99.9% confidence interval of the mean.
+         */
+        double error() {
+            int n = scores.length;
+            if(n < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double squares = 0;
+            for(double s : scores) {
+                squares += (s - mean) * (s - mean);
+            }
+            return studentT(n - 1) * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+        }
+    }
+
+    // Student's t for a two-sided 99.9% interval, by degrees of freedom.
+    private static final double[] T_999 = {
+        Double.NaN, 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59,
+    };
+
+    // Stops the JIT removing work whose result is unused.
+    private static volatile long sink;
+
+    private final List<Case> cases = new ArrayList<>();
+    private final Pattern filter;
+    private final String jsonFile;
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * @param args The options described above.
+     */
+    public Harness(String[] args) {
+        String filter = ".*";
+        String jsonFile = null;
+        int warmup = 5;
+        int iterations = 5;
+        long time = 500;
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "--json" -> jsonFile = args[i + 1];
+                case "--filter" -> filter = args[i + 1];
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--time" -> time = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if(args.length % 2 != 0) {
+            throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+        }
+        this.filter = Pattern.compile(filter);
+        this.jsonFile = jsonFile;
+        this.warmupIterations = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = time * 1_000_000;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * Make a result count as used.
+     * @param value Any value derived from the result of the work.
+     */
+    public static void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * Add a case.
+     * @param name The name of the benchmark.
+     * @param params The parameters of this case, such as its input; in order.
+     * @param mode How its score is expressed.
+     * @param unit The name of the unit of the score.
+     * @param scale For THROUGHPUT, the number of units of work per unit of score.
+     * @param workload The operation.
+     */
+    public void add(String name, Map<String, String> params, Mode mode, String unit, double scale,
+                    Workload workload) {
+        cases.add(new Case(name, new LinkedHashMap<>(params), mode, unit, scale, workload));
+    }
+
+    /**
+     * Run the cases that match the filter, report the results and
+     * write them as JSON if asked.
+     * @throws IOException if the JSON cannot be written.
+     */
+    public void run() throws IOException {
+        List<Result> results = new ArrayList<>();
+        for(Case c : cases) {
+            if(filter.matcher(c.label()).find()) {
+                System.out.printf("# %s%n", c.label());
+                results.add(measure(c));
+            }
+        }
+        report(results);
+        if(jsonFile != null) {
+            try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(jsonFile)))) {
+                writeJson(results, out);
+            }
+        }
+    }
+
+    private Result measure(Case c) {
+        for(int i = 0; i < warmupIterations; i++) {
+            iteration(c);
+        }
+        long thread = Thread.currentThread().getId();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long units = 0;
+        long elapsed = 0;
+        double[] scores = new double[iterations];
+        for(int i = 0; i < iterations; i++) {
+            long[] iteration = iteration(c);
+            units += iteration[0];
+            elapsed += iteration[1];
+            scores[i] = score(c, iteration[0], iteration[1]);
+            System.out.printf("Iteration %2d: %.3f %s%n", i + 1, scores[i], c.unit);
+        }
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        return new Result(c, scores, (double) allocated / units, allocated / (elapsed / 1e9) / 1e6,
+                          gcCount() - gcCount, gcTime() - gcTime);
+    }
+
+    /**
+     * Invoke a case repeatedly for the length of one iteration.
+     * @return the units of work done and the nanoseconds taken.
+     */
+    private long[] iteration(Case c) {
+        long units = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            units += c.workload.run();
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < iterationNanos);
+        return new long[]{ units, elapsed };
+    }
+
+    private static double score(Case c, long units, long nanos) {
+        if(c.mode == Mode.THROUGHPUT) {
+            return units / (nanos / 1e9) / c.scale;
+        }
+        return (double) nanos / units;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static double studentT(int degrees) {
+        if(degrees < T_999.length) {
+            return T_999[degrees];
+        }
+        return degrees <= 20 ? 3.85 : degrees <= 30 ? 3.65 : 3.29;
+    }
+
+    private static void report(List<Result> results) {
+        int width = 9;
+        for(Result r : results) {
+            width = Math.max(width, r.c.label().length());
+        }
+        String format = "%-" + width + "s %5s %12s %10s %-10s %12s %6s%n";
+        System.out.println();
+        System.out.printf(format, "Benchmark", "Mode", "Score", "Error", "Units", "B/unit", "GCs");
+        for(Result r : results) {
+            System.out.printf(format, r.c.label(), r.c.mode.label,
+                              String.format("%.3f", r.mean()), String.format("+- %.3f", r.error()),
+                              r.c.unit, String.format("%.3f", r.allocPerUnit), r.gcCount);
+        }
+        if(sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Write the results in the layout of JMH's JSON output.
+     */
+    private void writeJson(List<Result> results, PrintWriter out) {
+        out.println("[");
+        for(int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.println("    {");
+            out.printf("        \"benchmark\" : %s,%n", quote(r.c.name));
+            out.printf("        \"mode\" : %s,%n", quote(r.c.mode.label));
+            out.printf("        \"jvm\" : %s,%n", quote(System.getProperty("java.home")));
+            out.printf("        \"jdkVersion\" : %s,%n", quote(System.getProperty("java.version")));
+            out.printf("        \"warmupIterations\" : %d,%n", warmupIterations);
+            out.printf("        \"warmupTime\" : %s,%n", quote(iterationNanos / 1_000_000 + " ms"));
+            out.printf("        \"measurementIterations\" : %d,%n", iterations);
+            out.printf("        \"measurementTime\" : %s,%n", quote(iterationNanos / 1_000_000 + " ms"));
+            out.println("        \"params\" : {");
+            int p = 0;
+            for(Map.Entry<String, String> param : r.c.params.entrySet()) {
+                out.printf("            %s : %s%s%n", quote(param.getKey()), quote(param.getValue()),
+                           ++p < r.c.params.size() ? "," : "");
+            }
+            out.println("        },");
+            out.println("        \"primaryMetric\" : {");
+            out.printf("            \"score\" : %s,%n", number(r.mean()));
+            out.printf("            \"scoreError\" : %s,%n", number(r.error()));
+            out.printf("            \"scoreUnit\" : %s,%n", quote(r.c.unit));
+            out.print("            \"rawData\" : [ [ ");
+            for(int s = 0; s < r.scores.length; s++) {
+                out.print((s > 0 ? ", " : "") + number(r.scores[s]));
+            }
+            out.println(" ] ]");
+            out.println("        },");
+            out.println("        \"secondaryMetrics\" : {");
+            secondary(out, "gc.alloc.rate", r.allocRate, "MB/sec", true);
+            secondary(out, "gc.alloc.rate.norm", r.allocPerUnit, "B/unit", true);
+            secondary(out, "gc.count", r.gcCount, "counts", true);
+            secondary(out, "gc.time", r.gcTime, "ms", false);
+            out.println("        }");
+            out.println(i + 1 < results.size() ? "    }," : "    }");
+        }
+        out.println("]");
+    }
+
+    private static void secondary(PrintWriter out, String name, double score, String unit, boolean more) {
+        out.printf("            %s : { \"score\" : %s, \"scoreUnit\" : %s }%s%n",
+                   quote(name), number(score), quote(unit), more ? "," : "");
+    }
+
+    private static String number(double d) {
+        return Double.isFinite(d) ? String.format(Locale.ROOT, "%.6f", d) : "\"NaN\"";
+    }
+
+    private static String quote(String s) {
+        StringBuilder q = new StringBuilder("\"");
+        for(char c : s.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                q.append('\\').append(c);
+            }
+            else if(c < ' ') {
+                q.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                q.append(c);
+            }
+        }
+        return q.append('"').toString();
+    }
+}
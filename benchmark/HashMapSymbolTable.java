@@ -0,0 +1,47 @@
+package benchmark;
+
+import assign4.SymbolTable.Kind;
+
+import java.util.HashMap;
+
+/**
+ * The previous symbol table, with a HashMap per scope, kept as a
+ * baseline for SymbolTableBenchmark.
+ */
+class HashMapSymbolTable {
+    private static class Identity {
+        final int name;
+        final int type;
+        final Kind kind;
+
+        Identity(int name, int type, Kind kind) {
+            this.name = name;
+            this.type = type;
+            this.kind = kind;
+        }
+    }
+
+    private HashMap<Integer, Identity> classScope = new HashMap<>();
+    private HashMap<Integer, Identity> localScope = new HashMap<>();
+
+    void startSubroutine() {
+        localScope = new HashMap<>();
+    }
+
+    void define(int name, int type, Kind kind) {
+        Identity identity = new Identity(name, type, kind);
+        switch(kind) {
+            case STATIC, FIELD, CLASS, FUNC -> classScope.put(name, identity);
+            case ARG, VAR -> localScope.put(name, identity);
+        }
+    }
+
+    boolean isDefined(int name) {
+        return classScope.containsKey(name) || localScope.containsKey(name);
+    }
+
+    int typeOf(int name) {
+        if(classScope.get(name).kind != null) return classScope.get(name).type;
+        return localScope.get(name).type;
+    }
+}
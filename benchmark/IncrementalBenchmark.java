@@ -0,0 +1,88 @@
+package benchmark;
+
+import assign4.ParsedClass;
+import assign4.Parser;
+import tokenizer.IdentifierPool;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compare parsing a large class from scratch with parsing it again
+ * after a small edit, as an editor does after each keystroke.
+ *
+ * The class is made by Inputs.syntheticClass(). Each edit changes a
+ * digit of an integer constant in a randomly chosen subroutine, so the
+ * class stays valid.
+ *
+ * Usage: java benchmark.IncrementalBenchmark [lines]
+ */
+public class IncrementalBenchmark {
+    private static final int DEFAULT_LINES = 10_000;
+    private static final int WARMUP_EDITS = 20_000;
+    private static final int MEASURED_EDITS = 2_000;
+    private static final int FULL_PARSES = 50;
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LINES;
+        String text = Inputs.syntheticClass(lines);
+        IdentifierPool pool = new IdentifierPool();
+        Random random = new Random(42);
+
+        ParsedClass parsed = Parser.parse(text, pool);
+        if(!parsed.isOk()) {
+            throw new IllegalStateException("Generated class does not parse");
+        }
+        for(int i = 0; i < WARMUP_EDITS; i++) {
+            parsed = edit(parsed, random);
+        }
+        long[] times = new long[MEASURED_EDITS];
+        long subroutines = 0;
+        for(int i = 0; i < MEASURED_EDITS; i++) {
+            long start = System.nanoTime();
+            parsed = edit(parsed, random);
+            times[i] = System.nanoTime() - start;
+            subroutines += parsed.getSubroutinesParsed();
+        }
+        if(!parsed.isOk()) {
+            throw new IllegalStateException("Edited class does not parse");
+        }
+
+        long[] full = new long[FULL_PARSES];
+        for(int i = 0; i < FULL_PARSES; i++) {
+            long start = System.nanoTime();
+            Parser.parse(parsed.getText(), pool);
+            full[i] = System.nanoTime() - start;
+        }
+
+        System.out.printf("%d lines, %d chars%n", lines, text.length());
+        System.out.printf("%-10s %10s %10s %10s%n", "parse", "p50 us", "p99 us", "max us");
+        report("full", full);
+        report("reparse", times);
+        System.out.printf("subroutines parsed per edit: %.2f%n", (double) subroutines / MEASURED_EDITS);
+    }
+
+    /**
+     * Change an integer constant, which is a digit that does not
+     * follow a letter or digit of a name.
+     */
+    private static ParsedClass edit(ParsedClass parsed, Random random) {
+        CharSequence text = parsed.getText();
+        int offset = random.nextInt(text.length());
+        while(!Character.isDigit(text.charAt(offset)) ||
+                Character.isLetterOrDigit(text.charAt(offset - 1))) {
+            offset = (offset + 1) % text.length();
+        }
+        String digit = String.valueOf((char) ('1' + random.nextInt(9)));
+        return Parser.reparse(parsed, offset, 1, digit);
+    }
+
+    private static void report(String name, long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s %10.1f %10.1f %10.1f%n", name,
+                          sorted[sorted.length / 2] / 1e3,
+                          sorted[sorted.length * 99 / 100] / 1e3,
+                          sorted[sorted.length - 1] / 1e3);
+    }
+}
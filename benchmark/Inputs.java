@@ -0,0 +1,148 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sources the benchmarks are run over: the files in test/,
+ * and generated classes much larger than any of them, one of them
+ * mostly comments.
+ */
+public class Inputs {
+    /**
+     * A named set of source texts.
+     */
+    public static class Input {
+        public final String name;
+        public final List<String> texts;
+        // The total number of characters.
+        public final long length;
+
+        Input(String name, List<String> texts) {
+            this.name = name;
+            this.texts = texts;
+            long length = 0;
+            for(String text : texts) {
+                length += text.length();
+            }
+            this.length = length;
+        }
+    }
+
+    private static final String TEST_DIR = "test";
+    private static final int SYNTHETIC_LINES = 10_000;
+
+    /**
+     * @return the inputs, smallest first.
+     * @throws IOException if the test files cannot be read.
+     */
+    public static List<Input> load() throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        inputs.add(new Input("test", readJackFiles(Paths.get(TEST_DIR))));
+        inputs.add(new Input("synthetic", List.of(syntheticClass(SYNTHETIC_LINES))));
+        inputs.add(new Input("comments", List.of(commentedClass(SYNTHETIC_LINES))));
+        return inputs;
+    }
+
+    /**
+     * @return the contents of the Jack files in a directory, in name order.
+     */
+    private static List<String> readJackFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*.jack")) {
+            for(Path file : entries) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        List<String> texts = new ArrayList<>();
+        for(Path file : files) {
+            texts.add(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+        }
+        return texts;
+    }
+
+    /**
+     * @return the source of a valid class of about the given number of lines:
+     *         a few fields, then subroutines of twelve lines each.
+     */
+    public static String syntheticClass(int lines) {
+        StringBuilder s = new StringBuilder();
+        s.append("class Big {\n");
+        s.append("    field int count;\n");
+        s.append("    field Array items;\n");
+        s.append("    static boolean ready;\n\n");
+        // Five lines of header and end, then twelve per subroutine.
+        for(int n = 0, written = 5; written < lines; n++, written += 12) {
+            s.append("    method int step").append(n).append("(int a, int b) {\n");
+            s.append("        var int i, total;\n");
+            s.append("        let i = 0;\n");
+            s.append("        let total = a * ").append(n % 9 + 1).append(";\n");
+            s.append("        while (i < b) {\n");
+            s.append("            let items[i] = items[i] + (total / 3);\n");
+            s.append("            let i = i + 1;\n");
+            s.append("        }\n");
+            s.append("        if (ready) { let count = count - 1; }\n");
+            s.append("        return total + count;\n");
+            s.append("    }\n\n");
+        }
+        s.append("}\n");
+        return s.toString();
+    }
+
+    /**
+     * @return the source of a valid class of about the given number of
+     *         lines, most of them in comments, as in sources that open
+     *         with a license and document every subroutine: a boxed
+     *         license header, then subroutines of twenty lines each,
+     *         with a doc comment, line comments and string constants.
+     */
+    public static String commentedClass(int lines) {
+        StringBuilder s = new StringBuilder();
+        s.append("/******************************************************************************\n");
+        s.append(" * Copyright (c) The Authors. All rights reserved.                            *\n");
+        s.append(" *                                                                            *\n");
+        s.append(" * Licensed under the Apache License, Version 2.0 (the \"License\"); you may   *\n");
+        s.append(" * not use this file except in compliance with the License. You may obtain   *\n");
+        s.append(" * a copy of the License at http://www.apache.org/licenses/LICENSE-2.0        *\n");
+        s.append(" *                                                                            *\n");
+        s.append(" * Unless required by applicable law or agreed to in writing, software        *\n");
+        s.append(" * distributed under the License is distributed on an \"AS IS\" BASIS,         *\n");
+        s.append(" * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *\n");
+        s.append(" ******************************************************************************/\n\n");
+        s.append("// A class that is mostly comments.\n");
+        s.append("class Commented {\n");
+        s.append("    field int count;  // The number of steps taken.\n");
+        s.append("    field String label;\n\n");
+        // Eighteen lines of header and end, then twenty per subroutine.
+        for(int n = 0, written = 18; written < lines; n++, written += 20) {
+            s.append("    /**\n");
+            s.append("     * Take step ").append(n).append(" of the computation, adding the first\n");
+            s.append("     * argument to the count, and return the new count.\n");
+            s.append("     *\n");
+            s.append("     * @param a The amount to add, which may be negative.\n");
+            s.append("     * @param b The number of times to add it.\n");
+            s.append("     * @return the new count.\n");
+            s.append("     */\n");
+            s.append("    method int step").append(n).append("(int a, int b) {\n");
+            s.append("        var int i;\n");
+            s.append("        let i = 0;  // Count up to b.\n");
+            s.append("        while (i < b) {\n");
+            s.append("            // Add once per time round, as there is no multiply here.\n");
+            s.append("            let count = count + a;\n");
+            s.append("            let i = i + 1;\n");
+            s.append("        }\n");
+            s.append("        let label = \"count after step ").append(n).append(" of the computation\";\n");
+            s.append("        return count;\n");
+            s.append("    }\n\n");
+        }
+        s.append("}\n");
+        return s.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import benchmark.Harness.Mode;
+import tokenizer.Keyword;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The time taken by Keyword.identify() over a mix of keywords and
+ * identifiers, both as Strings and as slices of a larger text as the
+ * tokenizer uses it.
+ *
+ * Usage: java benchmark.KeywordBenchmark [harness options]
+ */
+public class KeywordBenchmark {
+    private static final String[] WORDS = {
+        "class", "constructor", "function", "method", "field", "static", "var",
+        "int", "char", "boolean", "void", "true", "false", "null", "this",
+        "let", "do", "if", "else", "while", "return",
+        "x", "i", "count", "items", "Array", "Output", "printString", "length",
+        "classy", "dispose", "whiles", "lets", "iff", "_index", "value2",
+    };
+
+    public static void main(String[] args) throws IOException {
+        Harness harness = new Harness(args);
+        addTo(harness);
+        harness.run();
+    }
+
+    /**
+     * Add the cases of this benchmark.
+     * @param harness The harness.
+     */
+    public static void addTo(Harness harness) {
+        StringBuilder text = new StringBuilder();
+        int[] offsets = new int[WORDS.length];
+        for(int i = 0; i < WORDS.length; i++) {
+            offsets[i] = text.length();
+            text.append(WORDS[i]).append(' ');
+        }
+        harness.add("Keyword.identify", Map.of("form", "string"), Mode.AVERAGE_TIME, "ns/op", 1, () -> {
+            for(String word : WORDS) {
+                Keyword k = Keyword.identify(word);
+                Harness.consume(k == null ? -1 : k.ordinal());
+            }
+            return WORDS.length;
+        });
+        harness.add("Keyword.identify", Map.of("form", "slice"), Mode.AVERAGE_TIME, "ns/op", 1, () -> {
+            for(int i = 0; i < WORDS.length; i++) {
+                Keyword k = Keyword.identify(text, offsets[i], WORDS[i].length());
+                Harness.consume(k == null ? -1 : k.ordinal());
+            }
+            return WORDS.length;
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import assign4.BatchParser;
+import assign4.ParseResult;
+import tokenizer.Keyword;
+import tokenizer.Token;
+import tokenizer.Tokenizer;
+
+import java.util.Locale;
+
+/**
+ * Check that Keyword.identify() recognises every keyword, and nothing
+ * else: each word made from a keyword by changing its first or last
+ * character, which may share the keyword's hash, must come back as
+ * an identifier, whether it is looked up as a String, as a slice of
+ * a larger text, or read by the Tokenizer. A class using such words
+ * as names must parse.
+ *
+ * Usage: java benchmark.KeywordCheck
+ * The exit status is 1 if any check fails.
+ */
+public class KeywordCheck {
+    private static int failures;
+
+    public static void main(String[] args) {
+        int words = 0;
+        for(Keyword k : Keyword.values()) {
+            String word = k.name().toLowerCase(Locale.ROOT);
+            check(word, k);
+            for(int at : new int[]{ 0, word.length() - 1 }) {
+                for(char c = 'a'; c <= 'z'; c++) {
+                    if(c != word.charAt(at)) {
+                        char[] miss = word.toCharArray();
+                        miss[at] = c;
+                        check(new String(miss), null);
+                        words++;
+                    }
+                }
+            }
+        }
+        String source = "class Near { field int be, na, ru; static boolean pi, bc; "
+                      + "method int alasi(int xlass) { var int diss; let diss = be + na + ru + xlass; "
+                      + "return diss; } }";
+        ParseResult result = new BatchParser().parse("Near.jack", source);
+        if(!result.ok) {
+            System.out.println("FAIL: a class named with near misses of keywords: " + result);
+            failures++;
+        }
+        System.out.printf("checked %d keywords and %d near misses: %d failures%n",
+                          Keyword.values().length, words, failures);
+        if(failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check that a word is read as the given keyword, or as an
+     * identifier if that is null, in each of the ways it may be read.
+     */
+    private static void check(String word, Keyword expected) {
+        String padded = "(" + word + ")";
+        Keyword asString = Keyword.identify(word);
+        Keyword asSlice = Keyword.identify(padded, 1, word.length());
+        Tokenizer lex = new Tokenizer(padded);
+        lex.advance();
+        lex.advance();
+        Token type = lex.getTokenType();
+        Keyword lexed = type == Token.KEYWORD ? lex.getKeyword() : null;
+        if(asString != expected || asSlice != expected || lexed != expected
+                || (expected == null && type != Token.IDENTIFIER)) {
+            System.out.printf("FAIL: '%s' read as %s, %s and %s %s, not %s%n",
+                              word, asString, asSlice, type, lexed,
+                              expected == null ? "an identifier" : expected);
+            failures++;
+        }
+    }
+}
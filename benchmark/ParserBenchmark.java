@@ -0,0 +1,81 @@
+package benchmark;
+
+import assign4.BatchParser;
+import assign4.Parser;
+import assign4.SyntaxTree;
+import benchmark.Harness.Mode;
+import benchmark.Inputs.Input;
+import tokenizer.IdentifierPool;
+import tokenizer.Tokenizer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The rate at which Parser.parseClass() parses source text already
+ * in memory, from the first token to the outcome, with and without
+ * building a syntax tree, and the rate at which a BatchParser does so
+ * with the Tokenizer and Parser it reuses for each text.
+ *
+ * Usage: java benchmark.ParserBenchmark [harness options]
+ */
+public class ParserBenchmark {
+    public static void main(String[] args) throws IOException {
+        Harness harness = new Harness(args);
+        addTo(harness, Inputs.load());
+        harness.run();
+    }
+
+    /**
+     * Add the cases of this benchmark.
+     * @param harness The harness.
+     * @param inputs The inputs to run over.
+     */
+    public static void addTo(Harness harness, Iterable<Input> inputs) {
+        for(Input input : inputs) {
+            for(boolean tree : new boolean[]{ false, true }) {
+                IdentifierPool pool = new IdentifierPool();
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("input", input.name);
+                params.put("tree", String.valueOf(tree));
+                harness.add("Parser.parseClass", params, Mode.THROUGHPUT, "MB/s", 1e6,
+                            () -> parse(input, pool, tree));
+            }
+            BatchParser batch = new BatchParser();
+            harness.add("BatchParser.parse", Map.of("input", input.name), Mode.THROUGHPUT, "MB/s", 1e6,
+                        () -> parse(input, batch));
+        }
+    }
+
+    /**
+     * Parse every text of the input.
+     * @return the number of characters parsed.
+     */
+    private static long parse(Input input, IdentifierPool pool, boolean buildTree) {
+        for(String text : input.texts) {
+            Tokenizer lex = new Tokenizer(text, pool);
+            SyntaxTree tree = buildTree ? new SyntaxTree(text.length() / 8) : null;
+            Parser parser = buildTree ? new Parser(lex, tree) : new Parser(lex);
+            try {
+                parser.parseClass();
+                Harness.consume(1);
+            }
+            catch(RuntimeException ex) {
+                Harness.consume(lex.getLineNumber());
+            }
+        }
+        return input.length;
+    }
+
+    /**
+     * Parse every text of the input with a BatchParser.
+     * @return the number of characters parsed.
+     */
+    private static long parse(Input input, BatchParser batch) {
+        for(String text : input.texts) {
+            Harness.consume(batch.parse(input.name, text).errorLine);
+        }
+        return input.length;
+    }
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import assign4.Main;
+import assign4.SourceDiscovery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure parsing throughput of Main.parse against the number of
+ * files parsed concurrently.
+ *
+ * Usage: java benchmark.ScalingBenchmark [dir [maxJobs]]
+ * Without a directory, a corpus is made by copying the files
+ * in test/ many times over. For larger corpora, see CorpusGenerator.
+ */
+public class ScalingBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int COPIES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        List<File> files = args.length > 0 ? listJackFiles(new File(args[0])) : makeCorpus();
+        int maxJobs = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        long bytes = 0;
+        for(File f : files) {
+            bytes += f.length();
+        }
+        System.out.printf("%d files, %d bytes%n", files.size(), bytes);
+        System.out.printf("%6s %12s %10s %8s%n", "jobs", "files/s", "MB/s", "speedup");
+
+        double base = 0;
+        for(int jobs = 1; jobs <= maxJobs; jobs *= 2) {
+            for(int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(files, jobs);
+            }
+            long best = Long.MAX_VALUE;
+            for(int i = 0; i < MEASURED_ROUNDS; i++) {
+                best = Math.min(best, run(files, jobs));
+            }
+            double seconds = best / 1e9;
+            double filesPerSecond = files.size() / seconds;
+            if(jobs == 1) {
+                base = filesPerSecond;
+            }
+            System.out.printf("%6d %12.0f %10.2f %8.2f%n", jobs, filesPerSecond,
+                              bytes / seconds / 1e6, filesPerSecond / base);
+        }
+    }
+
+    /**
+     * Parse all the files once.
+     * @return the elapsed time in nanoseconds.
+     */
+    private static long run(List<File> files, int jobs) {
+        int[] count = new int[1];
+        long start = System.nanoTime();
+        Main.parse(files, jobs, result -> count[0]++);
+        long elapsed = System.nanoTime() - start;
+        if(count[0] != files.size()) {
+            throw new IllegalStateException("Only " + count[0] + " results");
+        }
+        return elapsed;
+    }
+
+    /**
+     * @return the .jack files in a directory and its subdirectories,
+     *         such as a corpus made by CorpusGenerator.
+     */
+    private static List<File> listJackFiles(File dir) {
+        List<File> files = new ArrayList<>();
+        for(File f : new SourceDiscovery(dir.toPath(), ".jack")) {
+            files.add(f);
+        }
+        return files;
+    }
+
+    /**
+     * Copy the files in test/ into a temporary directory many times.
+     */
+    private static List<File> makeCorpus() throws IOException {
+        Path dir = Files.createTempDirectory("jack-scaling");
+        dir.toFile().deleteOnExit();
+        List<File> sources = listJackFiles(new File("test"));
+        List<File> files = new ArrayList<>();
+        for(int i = 0; i < COPIES; i++) {
+            for(File src : sources) {
+                File copy = dir.resolve(i + "_" + src.getName()).toFile();
+                Files.copy(src.toPath(), copy.toPath());
+                copy.deleteOnExit();
+                files.add(copy);
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,113 @@
+package benchmark;
+
+import assign4.BatchParser;
+import assign4.ParseResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Check that a class far larger than the heap, all on one line, as
+ * a minifier or generator might write it, parses in little memory,
+ * and measure the rate at which it does.
+ *
+ * The class is one long subroutine, whose statements, comments and
+ * string constants vary in length so that tokens straddle the edges
+ * of the StreamingTokenizer's window at every offset. It is written
+ * to a file, parsed by a BatchParser, and must parse successfully;
+ * otherwise the exit status is 1. The peak heap use is reported.
+ *
+ * Usage: java -Xmx32m benchmark.StreamingBenchmark [size [file]]
+ * The size, such as 500M or 4G, defaults to 1G; the file defaults
+ * to a temporary one, which is deleted afterwards.
+ */
+public class StreamingBenchmark {
+    private static final long DEFAULT_SIZE = 1L << 30;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws IOException {
+        long size = args.length > 0 ? CorpusGenerator.parseSize(args[0]) : DEFAULT_SIZE;
+        Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("Long", ".jack");
+        try {
+            long start = System.nanoTime();
+            long written = write(file, size);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("wrote %d bytes on one line in %.1f s%n", written, seconds);
+
+            resetPeaks();
+            start = System.nanoTime();
+            ParseResult result = new BatchParser().parse(file);
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(result);
+            System.out.printf("parsed in %.1f s, %.1f MB/s, peak heap %.1f MB of %.1f MB%n",
+                              seconds, written / seconds / 1e6, peakHeap() / 1e6,
+                              Runtime.getRuntime().maxMemory() / 1e6);
+            if(!result.ok) {
+                System.exit(1);
+            }
+        }
+        finally {
+            if(args.length <= 1) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Write a valid class of about the given size, without a line end.
+     * @return the number of bytes written.
+     */
+    private static long write(Path file, long size) throws IOException {
+        long written = 0;
+        try(Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.US_ASCII), BUFFER_SIZE)) {
+            StringBuilder s = new StringBuilder();
+            s.append("/* A class on one line. */ class Long { field int count; field String label; ");
+            s.append("method int run(int a) { var int i; let i = 0; ");
+            for(long n = 0; written + s.length() < size; n++) {
+                switch((int) (n % 4)) {
+                    case 0 -> s.append("let count = count + ").append(n % 32768).append("; ");
+                    case 1 -> s.append("/* step ").append(n).append(' ').append("*".repeat((int) (n % 97))).append(" */ ");
+                    case 2 -> s.append("let label = \"").append("x".repeat((int) (n % 131))).append("\"; ");
+                    default -> s.append("while (i < a) { let i = i + ").append(n % 1000).append("; } ");
+                }
+                if(s.length() >= BUFFER_SIZE) {
+                    out.append(s);
+                    written += s.length();
+                    s.setLength(0);
+                }
+            }
+            s.append("return count; } }");
+            out.append(s);
+            written += s.length();
+        }
+        return written;
+    }
+
+    private static void resetPeaks() {
+        System.gc();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * @return the sum of the peak use of the heap's pools, in bytes.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
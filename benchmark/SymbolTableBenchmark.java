@@ -0,0 +1,164 @@
+package benchmark;
+
+import assign4.SymbolTable;
+import assign4.SymbolTable.Kind;
+import benchmark.Harness.Mode;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Compare the flat, scoped SymbolTable with the HashMap-per-scope
+ * table it replaced, and time its define() and isDefined() alone.
+ *
+ * The workload models a large class: some fields and statics, then
+ * many subroutines, each with a few arguments and locals followed by
+ * lookups of a mix of local and class-level names.
+ *
+ * Usage: java benchmark.SymbolTableBenchmark [harness options]
+ */
+public class SymbolTableBenchmark {
+    private static final int CLASS_VARS = 20;
+    private static final int SUBROUTINES = 1000;
+    private static final int ARGS = 3;
+    private static final int LOCALS = 6;
+    private static final int LOOKUPS = 40;
+
+    // Name ids: class-level names first, then locals.
+    private static final int FIRST_LOCAL = CLASS_VARS + SUBROUTINES;
+    // The number of operations in one run of the whole workload.
+    private static final long OPS = (long) SUBROUTINES * (1 + ARGS + LOCALS + LOOKUPS * 2) + CLASS_VARS;
+
+    public static void main(String[] args) throws IOException {
+        Harness harness = new Harness(args);
+        addTo(harness);
+        harness.run();
+    }
+
+    /**
+     * Add the cases of this benchmark.
+     * @param harness The harness.
+     */
+    public static void addTo(Harness harness) {
+        harness.add("SymbolTable.workload", Map.of("table", "flat"), Mode.AVERAGE_TIME, "ns/op", 1, () -> {
+            Harness.consume(flat());
+            return OPS;
+        });
+        harness.add("SymbolTable.workload", Map.of("table", "hashmap"), Mode.AVERAGE_TIME, "ns/op", 1, () -> {
+            Harness.consume(hashMap());
+            return OPS;
+        });
+        harness.add("SymbolTable.define", Map.of(), Mode.AVERAGE_TIME, "ns/op", 1,
+                    SymbolTableBenchmark::define);
+        SymbolTable table = classTable();
+        harness.add("SymbolTable.isDefined", Map.of(), Mode.AVERAGE_TIME, "ns/op", 1,
+                    () -> isDefined(table));
+    }
+
+    /**
+     * Define the locals of every subroutine.
+     * @return the number of definitions.
+     */
+    private static long define() {
+        SymbolTable table = new SymbolTable();
+        for(int s = 0; s < SUBROUTINES; s++) {
+            table.startSubroutine();
+            for(int l = 0; l < ARGS + LOCALS; l++) {
+                table.define(FIRST_LOCAL + l, 1, l < ARGS ? Kind.ARG : Kind.VAR);
+            }
+        }
+        table.endSubroutine();
+        Harness.consume(table.size());
+        return (long) SUBROUTINES * (ARGS + LOCALS);
+    }
+
+    /**
+     * Look up local, class-level and undefined names in a table
+     * within a subroutine.
+     * @return the number of lookups.
+     */
+    private static long isDefined(SymbolTable table) {
+        long found = 0;
+        for(int name = 0; name < FIRST_LOCAL + ARGS + LOCALS + 100; name++) {
+            if(table.isDefined(name)) {
+                found++;
+            }
+        }
+        Harness.consume(found);
+        return FIRST_LOCAL + ARGS + LOCALS + 100;
+    }
+
+    /**
+     * @return a table holding all the class-level names and the
+     *         locals of one subroutine.
+     */
+    private static SymbolTable classTable() {
+        SymbolTable table = new SymbolTable();
+        for(int v = 0; v < CLASS_VARS; v++) {
+            table.define(v, 0, v % 2 == 0 ? Kind.FIELD : Kind.STATIC);
+        }
+        for(int s = 0; s < SUBROUTINES; s++) {
+            table.define(CLASS_VARS + s, 0, Kind.FUNC);
+        }
+        table.startSubroutine();
+        for(int l = 0; l < ARGS + LOCALS; l++) {
+            table.define(FIRST_LOCAL + l, 1, l < ARGS ? Kind.ARG : Kind.VAR);
+        }
+        return table;
+    }
+
+    private static long flat() {
+        SymbolTable table = new SymbolTable();
+        long found = 0;
+        for(int v = 0; v < CLASS_VARS; v++) {
+            table.define(v, 0, v % 2 == 0 ? Kind.FIELD : Kind.STATIC);
+        }
+        for(int s = 0; s < SUBROUTINES; s++) {
+            table.define(CLASS_VARS + s, 0, Kind.FUNC);
+            table.startSubroutine();
+            for(int a = 0; a < ARGS; a++) {
+                table.define(FIRST_LOCAL + a, 1, Kind.ARG);
+            }
+            for(int l = 0; l < LOCALS; l++) {
+                table.define(FIRST_LOCAL + ARGS + l, 2, Kind.VAR);
+            }
+            for(int k = 0; k < LOOKUPS; k++) {
+                int local = FIRST_LOCAL + k % (ARGS + LOCALS);
+                int member = k % CLASS_VARS;
+                if(table.isDefined(local)) {
+                    found++;
+                }
+                found += table.typeOf(member);
+            }
+            table.endSubroutine();
+        }
+        return found;
+    }
+
+    private static long hashMap() {
+        HashMapSymbolTable table = new HashMapSymbolTable();
+        long found = 0;
+        for(int v = 0; v < CLASS_VARS; v++) {
+            table.define(v, 0, v % 2 == 0 ? Kind.FIELD : Kind.STATIC);
+        }
+        for(int s = 0; s < SUBROUTINES; s++) {
+            table.startSubroutine();
+            table.define(CLASS_VARS + s, 0, Kind.FUNC);
+            for(int a = 0; a < ARGS; a++) {
+                table.define(FIRST_LOCAL + a, 1, Kind.ARG);
+            }
+            for(int l = 0; l < LOCALS; l++) {
+                table.define(FIRST_LOCAL + ARGS + l, 2, Kind.VAR);
+            }
+            for(int k = 0; k < LOOKUPS; k++) {
+                int local = FIRST_LOCAL + k % (ARGS + LOCALS);
+                int member = k % CLASS_VARS;
+                if(table.isDefined(local)) {
+                    found++;
+                }
+                found += table.typeOf(member);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,90 @@
+package benchmark;
+
+import benchmark.Harness.Mode;
+import benchmark.Inputs.Input;
+import tokenizer.IdentifierPool;
+import tokenizer.Tokenizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rate at which Tokenizer.advance() reads tokens, over text
+ * already in memory: held as a String, or as the bytes of a file,
+ * over which whitespace and comments are skipped by the word.
+ *
+ * Usage: java benchmark.TokenizerBenchmark [harness options]
+ */
+public class TokenizerBenchmark {
+    public static void main(String[] args) throws IOException {
+        Harness harness = new Harness(args);
+        addTo(harness, Inputs.load());
+        harness.run();
+    }
+
+    /**
+     * Add the cases of this benchmark.
+     * @param harness The harness.
+     * @param inputs The inputs to run over.
+     */
+    public static void addTo(Harness harness, Iterable<Input> inputs) {
+        for(Input input : inputs) {
+            IdentifierPool pool = new IdentifierPool();
+            harness.add("Tokenizer.advance", params(input, "string"),
+                        Mode.THROUGHPUT, "Mtokens/s", 1e6, () -> tokenize(input, pool));
+            List<ByteBuffer> bytes = new ArrayList<>();
+            for(String text : input.texts) {
+                bytes.add(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+            }
+            Tokenizer lex = new Tokenizer("", pool);
+            harness.add("Tokenizer.advance", params(input, "bytes"),
+                        Mode.THROUGHPUT, "Mtokens/s", 1e6, () -> tokenize(bytes, lex, pool));
+        }
+    }
+
+    private static Map<String, String> params(Input input, String text) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("input", input.name);
+        params.put("text", text);
+        return params;
+    }
+
+    /**
+     * Read every token of the input.
+     * @return the number of tokens.
+     */
+    private static long tokenize(Input input, IdentifierPool pool) {
+        long tokens = 0;
+        for(String text : input.texts) {
+            Tokenizer lex = new Tokenizer(text, pool);
+            while(lex.hasMoreTokens()) {
+                lex.advance();
+                Harness.consume(lex.getTokenType().ordinal());
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Read every token of the bytes of the input.
+     * @return the number of tokens.
+     */
+    private static long tokenize(List<ByteBuffer> input, Tokenizer lex, IdentifierPool pool) {
+        long tokens = 0;
+        for(ByteBuffer bytes : input) {
+            lex.reset(bytes, pool);
+            while(lex.hasMoreTokens()) {
+                lex.advance();
+                Harness.consume(lex.getTokenType().ordinal());
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,226 @@
+package tokenizer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view of ASCII bytes as characters.
+ * Each byte is one character, so no decoding is required.
+ *
+ * The runs a tokenizer skips over - whitespace, comments and the
+ * contents of string constants - can be searched eight bytes at a time,
+ * by reading each eight as a long and testing all of its bytes at once
+ * with a few arithmetic operations. Since every byte is ASCII, below
+ * 0x80, no test can carry from one byte into the next, so a test sets
+ * the high bit of exactly the bytes that match it.
+ */
+class AsciiText implements CharSequence {
+    // Bits that are only set in non-ASCII bytes.
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    // Added to each byte, sets its high bit if it is not zero.
+    private static final long NOT_ZERO = 0x7F7F7F7F7F7F7F7FL;
+    // Added to each byte, sets its high bit if it is above ' '.
+    private static final long NOT_BLANK = 0x5F5F5F5F5F5F5F5FL;
+    // Eight of each of the characters searched for.
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long RETURNS = 0x0D0D0D0D0D0D0D0DL;
+    private static final long QUOTES = 0x2222222222222222L;
+    private static final long SLASHES = 0x2F2F2F2F2F2F2F2FL;
+
+    private final ByteBuffer bytes;
+
+    /**
+     * @param bytes The bytes, which must all be ASCII.
+     */
+    AsciiText(ByteBuffer bytes)
+    {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Does the given buffer contain only ASCII bytes?
+     * The buffer is checked eight bytes at a time.
+     * @param bytes The buffer to check.
+     * @return true if every byte is ASCII.
+     */
+    static boolean isAscii(ByteBuffer bytes)
+    {
+        int length = bytes.limit();
+        int i = 0;
+        for(; i + Long.BYTES <= length; i += Long.BYTES) {
+            if((bytes.getLong(i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for(; i < length; i++) {
+            if(bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param from The offset from which to search.
+     * @param to The offset at which to stop.
+     * @return the offset of the first character in [from, to) that
+     *         is not whitespace, as String.trim() sees it, or to.
+     */
+    int skipBlanks(int from, int to)
+    {
+        int i = from;
+        for(; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = (bytes.getLong(i) + NOT_BLANK) & HIGH_BITS;
+            if(found != 0) {
+                return i + first(found);
+            }
+        }
+        for(; i < to && bytes.get(i) <= ' '; i++) {
+            // Until a character that is not whitespace.
+        }
+        return i;
+    }
+
+    /**
+     * @param from The offset from which to search.
+     * @param to The offset at which to stop.
+     * @return the offset of the first line end in [from, to), or to.
+     */
+    int indexOfLineEnd(int from, int to)
+    {
+        int i = from;
+        for(; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = bytes.getLong(i);
+            long found = equal(word, NEWLINES) | equal(word, RETURNS);
+            if(found != 0) {
+                return i + first(found);
+            }
+        }
+        for(; i < to; i++) {
+            byte b = bytes.get(i);
+            if(b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @param from The offset from which to search.
+     * @param to The offset at which to stop.
+     * @return the offset of the first double quote or line end in
+     *         [from, to), which ends a string constant, or to.
+     */
+    int indexOfStringEnd(int from, int to)
+    {
+        int i = from;
+        for(; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = bytes.getLong(i);
+            long found = equal(word, QUOTES) | equal(word, NEWLINES) | equal(word, RETURNS);
+            if(found != 0) {
+                return i + first(found);
+            }
+        }
+        for(; i < to; i++) {
+            byte b = bytes.get(i);
+            if(b == '"' || b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Find the end of a multi-line comment. Slashes are searched for,
+     * rather than stars, since a comment may be boxed in rows of stars
+     * but rarely holds a slash.
+     * @param from The offset from which to search.
+     * @param to The offset at which to stop.
+     * @return the offset of the first star-slash that starts in
+     *         [from, to), or to if there is none.
+     */
+    int indexOfCommentEnd(int from, int to)
+    {
+        int i = from + 1;
+        while(i < to) {
+            int slash = indexOf(SLASHES, i, to);
+            if(slash == to) {
+                break;
+            }
+            if(bytes.get(slash - 1) == '*') {
+                return slash - 1;
+            }
+            i = slash + 1;
+        }
+        return to;
+    }
+
+    /**
+     * @param chars Eight of the character to search for.
+     * @return the offset of the first of the character in [from, to), or to.
+     */
+    private int indexOf(long chars, int from, int to)
+    {
+        int i = from;
+        for(; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = equal(bytes.getLong(i), chars);
+            if(found != 0) {
+                return i + first(found);
+            }
+        }
+        byte c = (byte) chars;
+        for(; i < to; i++) {
+            if(bytes.get(i) == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the high bit of each byte of the word that equals the
+     *         corresponding byte of chars.
+     */
+    private static long equal(long word, long chars)
+    {
+        // Bytes that match are zero, and only those have no high bit
+        // after adding NOT_ZERO.
+        return ~((word ^ chars) + NOT_ZERO) & HIGH_BITS;
+    }
+
+    /**
+     * @param found The high bits of the bytes that matched, of a long
+     *              read big-endian, so the first byte is the highest.
+     * @return the index of the first byte that matched.
+     */
+    private static int first(long found)
+    {
+        return Long.numberOfLeadingZeros(found) >>> 3;
+    }
+
+    @Override
+    public int length()
+    {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return (char) bytes.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return new AsciiText(bytes.slice(start, end - start));
+    }
+
+    @Override
+    public String toString()
+    {
+        byte[] copy = new byte[bytes.limit()];
+        bytes.get(0, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
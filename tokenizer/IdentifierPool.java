@@ -0,0 +1,184 @@
+package tokenizer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A pool of identifier names, each of which is given a dense int id.
+ *
+ * A pool may be shared by all the files of a compilation, so that
+ * each distinct name is stored only once and can be compared and
+ * looked up by its id. Names are looked up directly from a slice of
+ * the scan buffer, so a String is only made the first time a name
+ * is seen.
+ *
+ * Lookups of names already in the pool do not lock. Adding a name
+ * locks the pool.
+ */
+public class IdentifierPool {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * An open-addressed hash table of ids. A table is only replaced,
+     * never shrunk, when it becomes half full.
+     */
+    private static class Table {
+        // id + 1 of the name hashed to each slot, or 0 if empty.
+        final int[] slots;
+        // Names and their hashes, by id.
+        final String[] names;
+        final int[] hashes;
+
+        Table(int capacity)
+        {
+            slots = new int[capacity];
+            names = new String[capacity / 2];
+            hashes = new int[capacity / 2];
+        }
+    }
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    // The number of names in the pool.
+    private int size;
+
+    /**
+     * Return the id of the given name, adding it to the pool if necessary.
+     * @param name The name.
+     * @return its id.
+     */
+    public int intern(String name)
+    {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Return the id of the name spelled by part of a sequence of
+     * characters, adding it to the pool if necessary.
+     * @param s The characters.
+     * @param offset The start of the name.
+     * @param length The length of the name.
+     * @return its id.
+     */
+    public int intern(CharSequence s, int offset, int length)
+    {
+        int hash = hash(s, offset, length);
+        int id = find(table, hash, s, offset, length);
+        return id >= 0 ? id : add(hash, s, offset, length);
+    }
+
+    /**
+     * Return the name with the given id.
+     * @param id The id of a name in the pool.
+     * @return the name.
+     */
+    public String name(int id)
+    {
+        return table.names[id];
+    }
+
+    /**
+     * Return the number of distinct names in the pool.
+     * @return the number of names.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Find a name in the given table.
+     * @return its id, or -1 if it is not in the table.
+     */
+    private static int find(Table t, int hash, CharSequence s, int offset, int length)
+    {
+        int mask = t.slots.length - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = (int) SLOTS.getAcquire(t.slots, i);
+            if(slot == 0) {
+                return -1;
+            }
+            int id = slot - 1;
+            if(t.hashes[id] == hash && matches(t.names[id], s, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Add a name to the pool, unless another thread already has.
+     * @return its id.
+     */
+    private synchronized int add(int hash, CharSequence s, int offset, int length)
+    {
+        Table t = table;
+        int id = find(t, hash, s, offset, length);
+        if(id >= 0) {
+            return id;
+        }
+        if(size == t.names.length) {
+            t = grow(t);
+        }
+        id = size++;
+        t.names[id] = s.subSequence(offset, offset + length).toString();
+        t.hashes[id] = hash;
+        // Publish the slot only once the name can be seen.
+        SLOTS.setRelease(t.slots, freeSlot(t, hash), id + 1);
+        return id;
+    }
+
+    /**
+     * Replace the table with one twice the size.
+     * @return the new table.
+     */
+    private Table grow(Table old)
+    {
+        Table t = new Table(old.slots.length * 2);
+        System.arraycopy(old.names, 0, t.names, 0, size);
+        System.arraycopy(old.hashes, 0, t.hashes, 0, size);
+        for(int id = 0; id < size; id++) {
+            t.slots[freeSlot(t, t.hashes[id])] = id + 1;
+        }
+        table = t;
+        return t;
+    }
+
+    /**
+     * @return the first empty slot for the given hash.
+     */
+    private static int freeSlot(Table t, int hash)
+    {
+        int mask = t.slots.length - 1;
+        int i = hash & mask;
+        while(t.slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * @return a hash of the characters of the slice.
+     */
+    private static int hash(CharSequence s, int offset, int length)
+    {
+        int h = 0;
+        for(int i = 0; i < length; i++) {
+            h = 31 * h + s.charAt(offset + i);
+        }
+        // Spread the high bits into the low bits used for the index.
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence s, int offset, int length)
+    {
+        if(name.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(name.charAt(i) != s.charAt(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
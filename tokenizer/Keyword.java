@@ -1,5 +1,7 @@
 package tokenizer;
 
+import java.util.Locale;
+
 /**
  * Keywords of the Jack language.
  * 
@@ -16,32 +18,80 @@ public enum Keyword {
     NULL,
     THIS;
     
+    // Size of the hash table of keywords; a power of two.
+    private static final int TABLE_SIZE = 64;
+    // Keywords by hash of their spelling.
+    private static final Keyword[] TABLE = new Keyword[TABLE_SIZE];
+    // Bounds on the length of a keyword.
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 11;
+
+    static {
+        for(Keyword k : values()) {
+            int h = hash(k.word.charAt(0), k.word.charAt(k.word.length() - 1), k.word.length());
+            if(TABLE[h] != null) {
+                throw new IllegalStateException("Keyword hash collision: " + k + " " + TABLE[h]);
+            }
+            TABLE[h] = k;
+        }
+    }
+
+    // The spelling of the keyword in source.
+    private final String word = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * Identify the keyword with the given spelling.
+     * @param s The possible keyword.
+     * @return the keyword, or null if s is not a keyword.
+     */
     public static Keyword identify(String s)
     {
-        switch(s) {
-            case "class": return CLASS;
-            case "method": return METHOD;
-            case "function": return FUNCTION;
-            case "constructor": return CONSTRUCTOR;
-            case "int": return INT;
-            case "boolean": return BOOLEAN;
-            case "char": return CHAR;
-            case "void": return VOID;
-            case "var": return VAR;
-            case "static": return STATIC;
-            case "field": return FIELD;
-            case "let": return LET;
-            case "do": return DO;
-            case "if": return IF;
-            case "else": return ELSE;
-            case "while": return WHILE;
-            case "return": return RETURN;
-            case "true": return TRUE;
-            case "false": return FALSE;
-            case "null": return NULL;
-            case "this": return THIS;
-            default:
+        return identify(s, 0, s.length());
+    }
+
+    /**
+     * Identify the keyword spelled by part of a sequence of characters,
+     * without copying it.
+     * The first and last characters and the length select the only
+     * possible keyword, which is then compared character by character.
+     * Other words share a keyword's hash, so every character is compared.
+     * @param s The characters.
+     * @param offset The start of the possible keyword.
+     * @param length The length of the possible keyword.
+     * @return the keyword, or null if the characters are not a keyword.
+     */
+    public static Keyword identify(CharSequence s, int offset, int length)
+    {
+        if(length < MIN_LENGTH || length > MAX_LENGTH) {
+            return null;
+        }
+        char first = s.charAt(offset);
+        char last = s.charAt(offset + length - 1);
+        if(first < 'a' || first > 'z' || last < 'a' || last > 'z') {
+            return null;
+        }
+        Keyword k = TABLE[hash(first, last, length)];
+        if(k == null || k.word.length() != length
+                || k.word.charAt(0) != first || k.word.charAt(length - 1) != last) {
+            return null;
+        }
+        for(int i = 1; i < length - 1; i++) {
+            if(s.charAt(offset + i) != k.word.charAt(i)) {
                 return null;
+            }
         }
+        return k;
+    }
+
+    /**
+     * A hash that is distinct for every keyword.
+     * @param first The first character.
+     * @param last The last character.
+     * @param length The length.
+     * @return an index into TABLE.
+     */
+    private static int hash(char first, char last, int length)
+    {
+        return (first + last * 19 + length) & (TABLE_SIZE - 1);
     }
 }
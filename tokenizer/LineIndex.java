@@ -0,0 +1,134 @@
+package tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Map offsets in some text to line and column numbers.
+ *
+ * The index is a sorted array of the offsets at which lines start,
+ * searched by binary search. It is built lazily: text is only scanned
+ * for line ends as far as the furthest offset looked up so far, so an
+ * index that is never used costs nothing, and one used only to report
+ * an error costs a single pass up to it. Lookups that move forward
+ * through the text, as a tokenizer's do, first try the line of the
+ * previous lookup and the one after.
+ *
+ * A line ends with a line feed, a carriage return, or a carriage
+ * return followed by a line feed, as for a Reader.
+ */
+public class LineIndex {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The text being indexed.
+    private CharSequence text;
+    // The offsets at which the lines start, of which there are count.
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int count;
+    // The text before this offset has been scanned for line ends.
+    private int scanned;
+    // The line found by the previous lookup, as an index into starts.
+    private int last;
+
+    /**
+     * Index some text.
+     * @param text The text.
+     */
+    public LineIndex(CharSequence text)
+    {
+        reset(text);
+    }
+
+    /**
+     * Start again on new text, keeping the room the index has grown.
+     * @param text The text.
+     */
+    public void reset(CharSequence text)
+    {
+        this.text = text;
+        starts[0] = 0;
+        count = 1;
+        scanned = 0;
+        last = 0;
+    }
+
+    /**
+     * @param offset An offset in the text, or its length.
+     * @return the number of the line on which the offset lies, counting from 1.
+     */
+    public int lineOf(int offset)
+    {
+        return find(offset) + 1;
+    }
+
+    /**
+     * @param offset An offset in the text, or its length.
+     * @return the column of the offset, counting from 1.
+     */
+    public int columnOf(int offset)
+    {
+        return offset - starts[find(offset)] + 1;
+    }
+
+    /**
+     * @return the index in starts of the line on which the offset lies.
+     */
+    private int find(int offset)
+    {
+        if(offset > scanned) {
+            scanTo(offset);
+        }
+        int line = last;
+        if(starts[line] <= offset) {
+            // Most lookups are on the line of the previous one or the next.
+            if(line + 1 < count && starts[line + 1] <= offset) {
+                line++;
+                if(line + 1 < count && starts[line + 1] <= offset) {
+                    line = search(offset, line + 1, count);
+                }
+            }
+        }
+        else {
+            line = search(offset, 0, line);
+        }
+        last = line;
+        return line;
+    }
+
+    /**
+     * @return the index of the last line in starts[from, to) that starts at
+     *         or before the offset, or from - 1 if none does.
+     */
+    private int search(int offset, int from, int to)
+    {
+        int i = Arrays.binarySearch(starts, from, to, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Record the starts of the lines up to an offset.
+     * @param offset The offset.
+     */
+    private void scanTo(int offset)
+    {
+        int end = Math.min(offset, text.length());
+        for(int i = scanned; i < end; i++) {
+            if(isLineStart(i + 1)) {
+                if(count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        scanned = Math.max(scanned, end);
+    }
+
+    /**
+     * @return true if a line starts at the given offset, other than
+     *         the first: the character before it ends a line.
+     */
+    private boolean isLineStart(int offset)
+    {
+        char c = text.charAt(offset - 1);
+        return c == '\n' || (c == '\r' && (offset == text.length() || text.charAt(offset) != '\n'));
+    }
+}
@@ -0,0 +1,580 @@
+package tokenizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Tokenizer/lexical analyser for the Jack language that reads its input
+ * as it goes, through a window of fixed size, for inputs too large to
+ * be held whole, such as generated classes of many gigabytes, perhaps
+ * all on one line. The tokens are those a Tokenizer reads, and the line
+ * numbers are the same.
+ *
+ * When the window has been scanned, what is still needed of it is moved
+ * to its start and the rest is refilled from the input. Only the token
+ * being decoded is kept, so whitespace and comments of any length are
+ * read straight through, and a token may straddle any number of fills.
+ * The window only grows to hold a single token longer than itself, so
+ * the memory used depends on the longest token, not on the length of
+ * the input or of its lines.
+ *
+ * As there is no text to go back to, the values of identifiers and
+ * string constants are taken as each is decoded, and lines are counted
+ * as the text leaves the window, rather than looked up afterwards.
+ */
+public class StreamingTokenizer implements TokenSource, Closeable {
+    // Initial size of the window.
+    static final int WINDOW_SIZE = 64 * 1024;
+    private static final char COMMENT_CHAR = '/';
+
+    // The input.
+    private final Reader reader;
+    // The names of identifiers.
+    private final IdentifierPool pool;
+    // The window onto the input, and a view of it for the pool.
+    private char[] window = new char[WINDOW_SIZE];
+    private CharBuffer chars = CharBuffer.wrap(window);
+    // The number of characters in the window.
+    private int limit;
+    // The offset in the input of the start of the window.
+    private long base;
+    // The position in the window of the start of the next token.
+    private int pos;
+    // The position of the first character still needed when the window
+    // is refilled: the start of the token being decoded, or the cursor.
+    private int mark;
+    // Whether the input has been read to its end.
+    private boolean eof;
+    // The error in reading the input, if there has been one.
+    private IOException error;
+    // The last character of the input, once it has all been read.
+    private char last;
+    // The offset whose line is the current line number: the start
+    // of the next token, or the end of the input.
+    private long lineOffset;
+    // The lines counted up to the start of the window, and a count
+    // for lines within it.
+    private final LineCount counted = new LineCount();
+    private final LineCount scratch = new LineCount();
+
+    // Elements of the next token.
+    private Token tokenType;
+    private Keyword keyword;
+    private char symbol;
+    private long tokenStart;
+    // Its line and column, or 0 if they are yet to be found.
+    private int tokenLine;
+    private int tokenColumn;
+    private int identifierId;
+    private int intVal;
+    private String stringVal;
+
+    /**
+     * The number of lines in the text up to some offset.
+     */
+    private static class LineCount {
+        // The lines ended before the offset.
+        int lines;
+        // The offset at which the line of the offset starts.
+        long lineStart;
+        // Whether the character before the offset is a carriage return,
+        // which only ends a line if no line feed follows, so is yet to
+        // be counted.
+        boolean pendingReturn;
+
+        void set(LineCount other)
+        {
+            lines = other.lines;
+            lineStart = other.lineStart;
+            pendingReturn = other.pendingReturn;
+        }
+
+        /**
+         * Count the line ends in some text.
+         * @param text The text.
+         * @param from The start of the text to count.
+         * @param to The end of the text to count.
+         * @param base The offset in the input of text[0].
+         */
+        void count(char[] text, int from, int to, long base)
+        {
+            for(int i = from; i < to; i++) {
+                char c = text[i];
+                if(c == '\n') {
+                    lines++;
+                    lineStart = base + i + 1;
+                }
+                else if(pendingReturn) {
+                    lines++;
+                    lineStart = base + i;
+                }
+                pendingReturn = c == '\r';
+            }
+        }
+
+        /**
+         * @return the line of the offset counted to, which is the start
+         *         of a token or the end of the input, counting from 1.
+         */
+        int line()
+        {
+            // A line feed never follows the offset, so a carriage
+            // return before it ends a line.
+            return lines + (pendingReturn ? 2 : 1);
+        }
+
+        /**
+         * @return the column of the offset counted to, counting from 1.
+         */
+        int column(long offset)
+        {
+            long column = pendingReturn ? 1 : offset - lineStart + 1;
+            return (int) Math.min(column, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Create a StreamingTokenizer for the given input.
+     * @param reader The input, which is closed by close().
+     * @param pool The pool of identifier names to use.
+     */
+    public StreamingTokenizer(Reader reader, IdentifierPool pool)
+    {
+        this.reader = reader;
+        this.pool = pool;
+        try {
+            moveToNextToken();
+        }
+        catch(UncheckedIOException ex) {
+            // Kept, to be found by getError(); there are no tokens.
+        }
+    }
+
+    /**
+     * Create a StreamingTokenizer for the given file, which is decoded as
+     * a FileReader would.
+     * @param path The file to be read.
+     * @param pool The pool of identifier names to use.
+     * @throws IOException if the file cannot be opened.
+     */
+    public StreamingTokenizer(Path path, IdentifierPool pool)
+            throws IOException
+    {
+        this(Channels.newReader(FileChannel.open(path, StandardOpenOption.READ),
+                                Charset.defaultCharset().newDecoder()
+                                    .onMalformedInput(CodingErrorAction.REPLACE)
+                                    .onUnmappableCharacter(CodingErrorAction.REPLACE),
+                                WINDOW_SIZE),
+             pool);
+    }
+
+    /**
+     * Are there any more tokens?
+     * @return true if there is at least one more token.
+     */
+    @Override
+    public boolean hasMoreTokens()
+    {
+        return pos < limit;
+    }
+
+    /**
+     * Advance to the next token.
+     */
+    @Override
+    public void advance()
+    {
+        if(!hasMoreTokens()) {
+            throw new IllegalStateException("No more tokens");
+        }
+
+        tokenType = null;
+        keyword = null;
+        symbol = 0;
+        identifierId = -1;
+        intVal = Integer.MIN_VALUE;
+        stringVal = null;
+
+        decodeNextToken();
+        moveToNextToken();
+    }
+
+    /**
+     * Is the next token the given symbol?
+     * The cursor is already at its first character, within the window.
+     */
+    @Override
+    public boolean nextIsSymbol(char symbol)
+    {
+        return pos < limit && window[pos] == symbol;
+    }
+
+    @Override
+    public Token getTokenType()
+    {
+        return tokenType;
+    }
+
+    @Override
+    public Keyword getKeyword()
+    {
+        assert tokenType == Token.KEYWORD;
+        return keyword;
+    }
+
+    @Override
+    public char getSymbol()
+    {
+        assert tokenType == Token.SYMBOL;
+        return symbol;
+    }
+
+    @Override
+    public String getIdentifier()
+    {
+        assert tokenType == Token.IDENTIFIER;
+        return tokenType == Token.IDENTIFIER ? pool.name(identifierId) : null;
+    }
+
+    @Override
+    public int getIdentifierId()
+    {
+        assert tokenType == Token.IDENTIFIER;
+        return identifierId;
+    }
+
+    @Override
+    public IdentifierPool getIdentifierPool()
+    {
+        return pool;
+    }
+
+    @Override
+    public int getIntval()
+    {
+        assert tokenType == Token.INT_CONST;
+        return intVal;
+    }
+
+    @Override
+    public String getStringVal()
+    {
+        assert tokenType == Token.STRING_CONST;
+        return stringVal;
+    }
+
+    /**
+     * Return the number of the current line being processed: the line
+     * of the start of the next token. As a reader does, the end of
+     * input is reported as one further line beyond the last one read.
+     * @return the current line number.
+     */
+    @Override
+    public int getLineNumber()
+    {
+        int line = lineAt(lineOffset).line();
+        if(eof && lineOffset == base + limit && lineOffset > 0 && last != '\n' && last != '\r') {
+            line++;
+        }
+        return line;
+    }
+
+    @Override
+    public int getTokenLine()
+    {
+        if(tokenLine == 0) {
+            findTokenPosition();
+        }
+        return tokenLine;
+    }
+
+    @Override
+    public int getTokenColumn()
+    {
+        if(tokenLine == 0) {
+            findTokenPosition();
+        }
+        return tokenColumn;
+    }
+
+    /**
+     * An error in reading the input can only be thrown from advance()
+     * as an UncheckedIOException, which a parser may take for a syntax
+     * error, so it is also kept here.
+     * @return the error in reading the input, or null if there was none.
+     */
+    public IOException getError()
+    {
+        return error;
+    }
+
+    /**
+     * Close the input.
+     * @throws IOException if closing it fails.
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        reader.close();
+    }
+
+    /**
+     * Count the lines up to an offset within the window.
+     * @param offset The offset, at or after the start of the window.
+     * @return the count, which is only good until the next call.
+     */
+    private LineCount lineAt(long offset)
+    {
+        scratch.set(counted);
+        scratch.count(window, 0, (int) (offset - base), base);
+        return scratch;
+    }
+
+    /**
+     * Find the line and column of the current token, while it is
+     * still in the window.
+     */
+    private void findTokenPosition()
+    {
+        LineCount at = lineAt(tokenStart);
+        tokenLine = at.line();
+        tokenColumn = at.column(tokenStart);
+    }
+
+    /**
+     * Move what is still needed of the window, from the mark on, to its
+     * start, and read more of the input after it. The window is only
+     * enlarged if it is full of what is still needed.
+     * @return true if more was read; false at the end of the input.
+     */
+    private boolean fill()
+    {
+        if(eof) {
+            return false;
+        }
+        if(mark > 0) {
+            // The line of the current token may be asked for once it
+            // has left the window, so is found as the lines are counted.
+            int from = 0;
+            if(tokenLine == 0 && tokenStart >= base && tokenStart < base + mark) {
+                from = (int) (tokenStart - base);
+                counted.count(window, 0, from, base);
+                tokenLine = counted.line();
+                tokenColumn = counted.column(tokenStart);
+            }
+            counted.count(window, from, mark, base);
+            System.arraycopy(window, mark, window, 0, limit - mark);
+            limit -= mark;
+            pos -= mark;
+            base += mark;
+            mark = 0;
+        }
+        if(limit == window.length) {
+            window = Arrays.copyOf(window, window.length * 2);
+            chars = CharBuffer.wrap(window);
+        }
+        try {
+            int n = reader.read(window, limit, window.length - limit);
+            if(n < 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            last = window[limit - 1];
+            return true;
+        }
+        catch(IOException ex) {
+            error = ex;
+            eof = true;
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Decode the next token.
+     * The cursor is positioned at its first character.
+     */
+    private void decodeNextToken()
+    {
+        mark = pos;
+        char c = window[pos++];
+        if(Character.isAlphabetic(c) || c == '_') {
+            do {
+                while(pos < limit && isIdChar(window[pos])) {
+                    pos++;
+                }
+            } while(pos == limit && fill());
+            keyword = Keyword.identify(chars, mark, pos - mark);
+            if(keyword != null) {
+                tokenType = Token.KEYWORD;
+            }
+            else {
+                tokenType = Token.IDENTIFIER;
+                identifierId = pool.intern(chars, mark, pos - mark);
+            }
+        }
+        else if(Character.isDigit(c)) {
+            tokenType = Token.INT_CONST;
+            int value = Character.digit(c, 10);
+            do {
+                while(pos < limit && Character.isDigit(window[pos])) {
+                    value = Math.addExact(Math.multiplyExact(value, 10),
+                                          Character.digit(window[pos], 10));
+                    pos++;
+                }
+            } while(pos == limit && fill());
+            intVal = value;
+        }
+        else if(c == '"') {
+            tokenType = Token.STRING_CONST;
+            do {
+                while(pos < limit && window[pos] != '"' && !isLineEnd(window[pos])) {
+                    pos++;
+                }
+            } while(pos == limit && fill());
+            if(pos < limit && window[pos] == '"') {
+                pos++;
+            }
+            else {
+                throw new IllegalStateException("Unterminated string");
+            }
+            // Exclude the quotes.
+            stringVal = new String(window, mark + 1, pos - mark - 2);
+        }
+        else {
+            switch(c) {
+                case '+':
+                case '-':
+                case '*':
+                case '/':
+                case '&':
+                case '|':
+                case '<':
+                case '>':
+                case '=':
+                case '~':
+                case '{':
+                case '}':
+                case '(':
+                case ')':
+                case '[':
+                case ']':
+                case '.':
+                case ',':
+                case ';':
+                    tokenType = Token.SYMBOL;
+                    symbol = c;
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "Unrecognised character: " + c);
+            }
+        }
+        tokenStart = base + mark;
+        tokenLine = 0;
+    }
+
+    /**
+     * Is the given character belongs in an identifier?
+     * @param c The character to test.
+     * @return true if the character belongs in an identifier.
+     */
+    private static boolean isIdChar(char c)
+    {
+        return Character.isAlphabetic(c) ||
+               Character.isDigit(c) ||
+               c == '_';
+    }
+
+    /**
+     * Does the given character end a line?
+     * @param c The character to test.
+     * @return true if the character is a line terminator.
+     */
+    private static boolean isLineEnd(char c)
+    {
+        return c == '\n' || c == '\r';
+    }
+
+    /**
+     * Find the start of the next token, skipping any
+     * whitespace and comments, and refilling the window
+     * as it is used up. Nothing before the cursor is kept.
+     * Whitespace is anything that String.trim() would remove.
+     */
+    private void moveToNextToken()
+    {
+        while(true) {
+            mark = pos;
+            if(pos == limit && !fill()) {
+                break;
+            }
+            char c = window[pos];
+            if(c <= ' ') {
+                pos++;
+            }
+            else if(c == COMMENT_CHAR) {
+                // Look at the next character, keeping this one if it
+                // turns out to be a symbol.
+                if(pos + 1 == limit) {
+                    fill();
+                }
+                if(pos + 1 < limit && window[pos + 1] == COMMENT_CHAR) {
+                    // Single-line comment.
+                    pos += 2;
+                    do {
+                        while(pos < limit && !isLineEnd(window[pos])) {
+                            pos++;
+                        }
+                        mark = pos;
+                    } while(pos == limit && fill());
+                }
+                else if(pos + 1 < limit && window[pos + 1] == '*') {
+                    // Multi-line comment.
+                    pos += 2;
+                    skipMultiLineComment();
+                }
+                else {
+                    break;
+                }
+            }
+            else {
+                break;
+            }
+        }
+        lineOffset = base + pos;
+    }
+
+    /**
+     * The cursor is just beyond the opening characters of a multi-line
+     * comment. Move it beyond the end of the comment, or to the end of
+     * the input if the comment is unterminated.
+     */
+    private void skipMultiLineComment()
+    {
+        // Whether the character before the cursor is a star that
+        // could start the end of the comment.
+        boolean star = false;
+        do {
+            while(pos < limit) {
+                char c = window[pos++];
+                if(star && c == COMMENT_CHAR) {
+                    return;
+                }
+                star = c == '*';
+            }
+            mark = pos;
+        } while(fill());
+    }
+}
@@ -0,0 +1,92 @@
+package tokenizer;
+
+/**
+ * A sequence of Jack tokens that can be walked one at a time.
+ * The current token is undefined until the first call to advance().
+ */
+public interface TokenSource {
+    /**
+     * Are there any more tokens?
+     * @return true if there is at least one more token.
+     */
+    boolean hasMoreTokens();
+
+    /**
+     * Advance to the next token.
+     */
+    void advance();
+
+    /**
+     * Is the next token the given symbol? The current token is unchanged.
+     * @param symbol The symbol to look for.
+     * @return true if there is a next token and it is that symbol.
+     */
+    boolean nextIsSymbol(char symbol);
+
+    /**
+     * Return the current token.
+     * @return the current token.
+     */
+    Token getTokenType();
+
+    /**
+     * Return the current keyword.
+     * @return the current keyword.
+     */
+    Keyword getKeyword();
+
+    /**
+     * Return the current symbol.
+     * @return the current symbol.
+     */
+    char getSymbol();
+
+    /**
+     * Return the text of the current identifier.
+     * @return the current identifier.
+     */
+    String getIdentifier();
+
+    /**
+     * Return the id of the current identifier in the identifier pool.
+     * @return the id of the current identifier.
+     */
+    int getIdentifierId();
+
+    /**
+     * Return the pool that holds the names of identifiers.
+     * @return the identifier pool.
+     */
+    IdentifierPool getIdentifierPool();
+
+    /**
+     * Return the integer that is the current INT_CONST
+     * @return the current integer.
+     */
+    int getIntval();
+
+    /**
+     * Return the string that is the current STRING_CONST
+     * @return the current string.
+     */
+    String getStringVal();
+
+    /**
+     * Return the number of the current line being processed.
+     * @return the current line number.
+     */
+    int getLineNumber();
+
+    /**
+     * Return the number of the line on which the current token starts.
+     * Unlike getLineNumber(), this is never the line of the token after.
+     * @return the line of the current token, counting from 1.
+     */
+    int getTokenLine();
+
+    /**
+     * Return the column at which the current token starts.
+     * @return the column of the current token, counting from 1.
+     */
+    int getTokenColumn();
+}
@@ -0,0 +1,580 @@
+package tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of a complete source file, held in parallel primitive
+ * arrays and walked by index.
+ *
+ * A stream is built by draining a Tokenizer, so it can be created on a
+ * different thread from the one that parses it. Each token costs a few
+ * ints; identifiers are held as ids in the tokenizer's identifier pool,
+ * and string values are copied out of the source text only when asked for.
+ * Line numbers are not held, but found from the offsets of the tokens
+ * with a LineIndex, built when a line is first asked for.
+ *
+ * A lexical error is not reported when the stream is built, but when
+ * the parser advances onto the token that could not be decoded, so the
+ * outcome of a parse is the same as when reading from a Tokenizer.
+ *
+ * A stream can be edited into a new one without lexing the whole of
+ * the new text. Lexing resumes just before the edit and stops as soon
+ * as it reaches a token of the old stream beyond the edit, after which
+ * the old tokens are copied across with their positions adjusted.
+ */
+public class TokenStream implements TokenSource {
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    private static final Token[] TOKENS = Token.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The text the tokens were read from.
+    private final CharSequence text;
+    // The names of identifiers.
+    private final IdentifierPool pool;
+    // The number of tokens.
+    private int count;
+    // Token ordinal of each token.
+    private byte[] kinds;
+    // Keyword ordinal or symbol character of each token.
+    private char[] codes;
+    // Offset and length of each token in the text.
+    private int[] starts;
+    private int[] lengths;
+    // Value of each INT_CONST and pool id of each IDENTIFIER.
+    private int[] values;
+    // Where tokenizing stopped: the end of the text, or the start of
+    // the token that could not be decoded.
+    private int endOffset;
+    // The error that stopped tokenizing, if any.
+    private RuntimeException failure;
+    // After an edit, the first token lexed again, the first token
+    // copied from the old stream, and how far the copied tokens moved.
+    private int firstChanged;
+    private int firstReused;
+    private int shift;
+
+    // Index of the current token.
+    private int cursor = -1;
+    // The lines of the text, indexed when a line or column is first asked for.
+    private LineIndex lineIndex;
+
+    /**
+     * @param text The text the tokens will be read from.
+     * @param pool The pool of identifier names.
+     * @param capacity The initial number of tokens to allow for.
+     */
+    private TokenStream(CharSequence text, IdentifierPool pool, int capacity)
+    {
+        this.text = text;
+        this.pool = pool;
+        kinds = new byte[capacity];
+        codes = new char[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Make a stream that shares the tokens of another.
+     * @param other The other stream.
+     */
+    private TokenStream(TokenStream other)
+    {
+        text = other.text;
+        pool = other.pool;
+        count = other.count;
+        kinds = other.kinds;
+        codes = other.codes;
+        starts = other.starts;
+        lengths = other.lengths;
+        values = other.values;
+        endOffset = other.endOffset;
+        failure = other.failure;
+        firstChanged = other.firstChanged;
+        firstReused = other.firstReused;
+        shift = other.shift;
+    }
+
+    /**
+     * Read all the remaining tokens from the given tokenizer.
+     * @param lex The tokenizer, which should not have been advanced.
+     * @return the tokens.
+     */
+    public static TokenStream lex(Tokenizer lex)
+    {
+        CharSequence text = lex.getText();
+        // Jack source averages several characters per token.
+        TokenStream stream = new TokenStream(text, lex.getIdentifierPool(), Math.max(INITIAL_CAPACITY, text.length() / 4));
+        try {
+            while(lex.hasMoreTokens()) {
+                lex.advance();
+                stream.add(lex);
+            }
+        }
+        catch(RuntimeException ex) {
+            stream.failure = ex;
+        }
+        stream.endOffset = lex.getLineOffset();
+        stream.firstReused = stream.count;
+        return stream;
+    }
+
+    /**
+     * Make another stream over the same tokens, which are shared rather
+     * than copied, but with its own current token, so that several
+     * threads may each read the tokens through a stream of their own.
+     * @return the new stream, before its first token.
+     */
+    public TokenStream duplicate()
+    {
+        return new TokenStream(this);
+    }
+
+    /**
+     * Make the stream of tokens of this stream's text after an edit.
+     * This stream is left unchanged.
+     * @param offset The offset in the text of the start of the edit.
+     * @param removedLength The number of characters removed.
+     * @param inserted The characters inserted in their place.
+     * @return the tokens of the edited text.
+     */
+    public TokenStream edit(int offset, int removedLength, CharSequence inserted)
+    {
+        if(offset < 0 || removedLength < 0 || offset + removedLength > text.length()) {
+            throw new IndexOutOfBoundsException("Edit outside the text");
+        }
+        String edited = new StringBuilder(text.length() - removedLength + inserted.length())
+                .append(text, 0, offset)
+                .append(inserted)
+                .append(text, offset + removedLength, text.length())
+                .toString();
+        int delta = inserted.length() - removedLength;
+
+        // The edit may change the token before the first one that
+        // reaches it, by joining onto it, so lexing resumes from there.
+        int first = firstEndingAtOrAfter(offset);
+        TokenStream stream = new TokenStream(edited, pool, Math.max(INITIAL_CAPACITY, count + delta / 4));
+        Tokenizer lex;
+        if(first == 0) {
+            lex = new Tokenizer(edited, pool);
+        }
+        else {
+            stream.copy(this, 0, first - 1, 0);
+            lex = new Tokenizer(edited, pool, starts[first - 1]);
+        }
+        stream.firstChanged = stream.count;
+
+        // Where the text after the edit starts, in the edited text.
+        int unchanged = offset + inserted.length();
+        int old = stream.count;
+        try {
+            while(lex.hasMoreTokens()) {
+                int next = lex.getNextTokenStart();
+                if(next >= unchanged) {
+                    while(old < count && starts[old] + delta < next) {
+                        old++;
+                    }
+                    if(old < count && starts[old] + delta == next) {
+                        // From here on the text, and so the tokens, are as before.
+                        stream.firstReused = stream.count;
+                        stream.shift = stream.count - old;
+                        stream.copy(this, old, count, delta);
+                        stream.endOffset = endOffset + delta;
+                        stream.failure = failure;
+                        return stream;
+                    }
+                }
+                lex.advance();
+                stream.add(lex);
+            }
+        }
+        catch(RuntimeException ex) {
+            stream.failure = ex;
+        }
+        stream.endOffset = lex.getLineOffset();
+        stream.firstReused = stream.count;
+        stream.shift = stream.count - count;
+        return stream;
+    }
+
+    /**
+     * @return the index of the first token that ends at or after the
+     *         given offset, or the number of tokens if none does.
+     */
+    private int firstEndingAtOrAfter(int offset)
+    {
+        int low = 0;
+        int high = count;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(starts[mid] + lengths[mid] < offset) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param index The index of a token, or -1 for before the first.
+     * @return the offset the tokenizer reached after reading it: the
+     *         start of the next token, or where tokenizing stopped.
+     */
+    private int offsetAfter(int index)
+    {
+        return index + 1 < count ? starts[index + 1] : endOffset;
+    }
+
+    /**
+     * @return the tokenizer line number at the given offset, which
+     *         is the start of a token or where tokenizing stopped.
+     */
+    private int lineAt(int offset)
+    {
+        if(lineIndex == null) {
+            lineIndex = new LineIndex(text);
+        }
+        int line = lineIndex.lineOf(offset);
+        // A reader reports the end of input as one further line
+        // beyond the last one read.
+        int end = text.length();
+        if(offset == end && end > 0 && text.charAt(end - 1) != '\n' && text.charAt(end - 1) != '\r') {
+            line++;
+        }
+        return line;
+    }
+
+    /**
+     * Append a run of tokens of another stream over the same pool.
+     * @param other The other stream.
+     * @param from The index of the first token to copy.
+     * @param to The index after the last token to copy.
+     * @param offsetShift The amount to add to each offset.
+     */
+    private void copy(TokenStream other, int from, int to, int offsetShift)
+    {
+        int n = to - from;
+        ensureCapacity(count + n);
+        System.arraycopy(other.kinds, from, kinds, count, n);
+        System.arraycopy(other.codes, from, codes, count, n);
+        System.arraycopy(other.lengths, from, lengths, count, n);
+        System.arraycopy(other.values, from, values, count, n);
+        for(int i = 0; i < n; i++) {
+            starts[count + i] = other.starts[from + i] + offsetShift;
+        }
+        count += n;
+    }
+
+    /**
+     * Make room for at least the given number of tokens.
+     * @param capacity The number of tokens.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if(capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * Append the current token of the given tokenizer.
+     * @param lex The tokenizer.
+     */
+    private void add(Tokenizer lex)
+    {
+        ensureCapacity(count + 1);
+        Token type = lex.getTokenType();
+        kinds[count] = (byte) type.ordinal();
+        switch(type) {
+            case KEYWORD:
+                codes[count] = (char) lex.getKeyword().ordinal(); break;
+            case SYMBOL:
+                codes[count] = lex.getSymbol(); break;
+            case INT_CONST:
+                values[count] = lex.getIntval(); break;
+            case IDENTIFIER:
+                values[count] = lex.getIdentifierId(); break;
+            default:
+                break;
+        }
+        starts[count] = lex.getTokenStart();
+        lengths[count] = lex.getTokenLength();
+        count++;
+    }
+
+    /**
+     * Are there any more tokens?
+     * @return true if there is at least one more token.
+     */
+    @Override
+    public boolean hasMoreTokens()
+    {
+        return cursor + 1 < count || failure != null;
+    }
+
+    /**
+     * Advance to the next token.
+     */
+    @Override
+    public void advance()
+    {
+        if(cursor + 1 < count) {
+            cursor++;
+        }
+        else if(failure != null) {
+            throw failure;
+        }
+        else {
+            throw new IllegalStateException("No more tokens");
+        }
+    }
+
+    @Override
+    public boolean nextIsSymbol(char symbol)
+    {
+        return cursor + 1 < count && symbol(cursor + 1) == symbol;
+    }
+
+    @Override
+    public Token getTokenType()
+    {
+        return tokenType(cursor);
+    }
+
+    @Override
+    public Keyword getKeyword()
+    {
+        return keyword(cursor);
+    }
+
+    @Override
+    public char getSymbol()
+    {
+        return symbol(cursor);
+    }
+
+    @Override
+    public String getIdentifier()
+    {
+        return identifier(cursor);
+    }
+
+    @Override
+    public int getIdentifierId()
+    {
+        return identifierId(cursor);
+    }
+
+    @Override
+    public IdentifierPool getIdentifierPool()
+    {
+        return pool;
+    }
+
+    @Override
+    public int getIntval()
+    {
+        return intVal(cursor);
+    }
+
+    @Override
+    public String getStringVal()
+    {
+        return stringVal(cursor);
+    }
+
+    @Override
+    public int getLineNumber()
+    {
+        return lineAt(offsetAfter(cursor));
+    }
+
+    @Override
+    public int getTokenLine()
+    {
+        // A token starts on the line the tokenizer reached after the one before.
+        return lineAt(offsetAfter(cursor - 1));
+    }
+
+    @Override
+    public int getTokenColumn()
+    {
+        lineAt(starts[cursor]);
+        return lineIndex.columnOf(starts[cursor]);
+    }
+
+    /**
+     * Return the number of tokens successfully read.
+     * @return the number of tokens.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Return the text the tokens were read from.
+     * @return the text.
+     */
+    public CharSequence text()
+    {
+        return text;
+    }
+
+    /**
+     * Return the index of the first token that was lexed again when this
+     * stream was made by edit(). The tokens before it are those of the
+     * stream that was edited.
+     * @return the index of the first changed token, or 0 if the stream
+     *         was not made by an edit.
+     */
+    public int firstChanged()
+    {
+        return firstChanged;
+    }
+
+    /**
+     * Return the index of the first token that was copied from the
+     * stream that was edited, rather than lexed again. This token and
+     * all that follow are the same as those of the edited stream from
+     * index firstReused() - shift().
+     * @return the index of the first reused token, or size() if none were.
+     */
+    public int firstReused()
+    {
+        return firstReused;
+    }
+
+    /**
+     * Return how many places the reused tokens moved in the edit.
+     * @return the change in the index of the reused tokens.
+     */
+    public int shift()
+    {
+        return shift;
+    }
+
+    /**
+     * Return the index of the current token.
+     * @return the current index, or -1 before the first advance().
+     */
+    public int position()
+    {
+        return cursor;
+    }
+
+    /**
+     * Make the token at the given index the current one.
+     * @param index The index, or -1 to return to the start.
+     */
+    public void seek(int index)
+    {
+        if(index < -1 || index >= count) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        cursor = index;
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return the type of the token, or null if there is no such token.
+     */
+    public Token tokenType(int index)
+    {
+        return index >= 0 && index < count ? TOKENS[kinds[index]] : null;
+    }
+
+    /**
+     * @param index The index of a KEYWORD token.
+     * @return its keyword, or null if it is not a keyword.
+     */
+    public Keyword keyword(int index)
+    {
+        return kinds[index] == Token.KEYWORD.ordinal() ? KEYWORDS[codes[index]] : null;
+    }
+
+    /**
+     * @param index The index of a SYMBOL token.
+     * @return its symbol, or 0 if it is not a symbol.
+     */
+    public char symbol(int index)
+    {
+        return kinds[index] == Token.SYMBOL.ordinal() ? codes[index] : 0;
+    }
+
+    /**
+     * @param index The index of an IDENTIFIER token.
+     * @return its text, or null if it is not an identifier.
+     */
+    public String identifier(int index)
+    {
+        if(kinds[index] != Token.IDENTIFIER.ordinal()) {
+            return null;
+        }
+        return pool.name(values[index]);
+    }
+
+    /**
+     * @param index The index of an IDENTIFIER token.
+     * @return its id in the identifier pool, or -1 if it is not an identifier.
+     */
+    public int identifierId(int index)
+    {
+        return kinds[index] == Token.IDENTIFIER.ordinal() ? values[index] : -1;
+    }
+
+    /**
+     * @param index The index of an INT_CONST token.
+     * @return its value, or Integer.MIN_VALUE if it is not an INT_CONST.
+     */
+    public int intVal(int index)
+    {
+        return kinds[index] == Token.INT_CONST.ordinal() ? values[index] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @param index The index of a STRING_CONST token.
+     * @return its text without the quotes, or null if it is not a STRING_CONST.
+     */
+    public String stringVal(int index)
+    {
+        if(kinds[index] != Token.STRING_CONST.ordinal()) {
+            return null;
+        }
+        return text.subSequence(starts[index] + 1, starts[index] + lengths[index] - 1).toString();
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return its offset in the source text.
+     */
+    public int start(int index)
+    {
+        return starts[index];
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return the length of its text.
+     */
+    public int length(int index)
+    {
+        return lengths[index];
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return the tokenizer line number after reading it.
+     */
+    public int line(int index)
+    {
+        return lineAt(offsetAfter(index));
+    }
+}
@@ -1,71 +1,303 @@
 package tokenizer;
 
 import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * Tokenizer/lexical analyser for the Jack language.
- * 
+ *
+ * The whole input is held in a single character window that is
+ * scanned with an integer cursor. Decoding a token records only its
+ * position, so no text is copied unless the caller asks for the
+ * value of an identifier or string constant.
+ *
+ * Files that are pure ASCII are memory-mapped and scanned as bytes;
+ * anything else is decoded through a Reader. Over bytes, whitespace,
+ * comments and string constants are skipped eight bytes at a time.
+ *
+ * Lines are not counted as the text is scanned. Tokens are known by
+ * their offset, and line and column numbers are found from a LineIndex
+ * built lazily when one is asked for, such as to report an error.
+ *
  * @author djb
  * @version 2020.12.04
  */
-public class Tokenizer {
-    private final BufferedReader input;
-    // The current line being processed.
-    private String currentLine;
-    // The current line number.
-    private int lineNumber = 0;
+public class Tokenizer implements TokenSource {
+    // The text being processed.
+    private CharSequence text;
+    // The text, if it is ASCII bytes, which can be searched by the word.
+    private AsciiText ascii;
+    // The names of identifiers.
+    private IdentifierPool pool;
+    // The length of the text.
+    private int end;
+    // The position of the start of the next token.
+    private int pos;
+    // The position whose line is the current line number: the start
+    // of the next token, or the end of the text.
+    private int lineOffset;
+    // The lines of the text, indexed only when a line or column is asked for.
+    private LineIndex lines;
     private static final char COMMENT_CHAR = '/';
+    // Initial size of the buffer used to read the input.
+    private static final int BUFFER_SIZE = 8192;
+    // Files larger than this are mapped by reset(Path) rather than read
+    // into its buffers, so that the buffers stay a modest size.
+    private static final int MAX_REUSED_BUFFER = 16 * 1024 * 1024;
+
+    // Buffers kept by reset(Path) for the bytes of a file and, if they
+    // are not ASCII, the characters they decode to.
+    private ByteBuffer input;
+    private CharBuffer decoded;
+    private CharsetDecoder decoder;
 
     // Elements of the next token.
     private Token tokenType;
     private Keyword keyword;
     private char symbol;
+    private int tokenStart;
+    private int tokenLength;
     private String identifier;
+    private int identifierId;
     private int intVal;
     private String stringVal;
-    
-    private boolean debug = false;
-    
+
     /**
      * Create a Tokenizer for the given input.
      * @param reader The file to be read.
      */
     public Tokenizer(BufferedReader reader)
     {
-        this.input = reader;
-        currentLine = "";
+        this(readAll(reader), new IdentifierPool());
+    }
+
+    /**
+     * Create a Tokenizer for the given input.
+     * @param reader The file to be read.
+     * @param pool The pool of identifier names to use.
+     */
+    public Tokenizer(BufferedReader reader, IdentifierPool pool)
+    {
+        this(readAll(reader), pool);
+    }
+
+    /**
+     * Create a Tokenizer for the given file.
+     * @param path The file to be read.
+     * @throws IOException if the file cannot be read.
+     */
+    public Tokenizer(Path path)
+            throws IOException
+    {
+        this(read(path), new IdentifierPool());
+    }
+
+    /**
+     * Create a Tokenizer for the given file.
+     * @param path The file to be read.
+     * @param pool The pool of identifier names to use.
+     * @throws IOException if the file cannot be read.
+     */
+    public Tokenizer(Path path, IdentifierPool pool)
+            throws IOException
+    {
+        this(read(path), pool);
+    }
+
+    /**
+     * Create a Tokenizer for the given text.
+     * @param text The text to be tokenized.
+     */
+    public Tokenizer(CharSequence text)
+    {
+        this(text, new IdentifierPool());
+    }
+
+    /**
+     * Create a Tokenizer for the given text.
+     * @param text The text to be tokenized.
+     * @param pool The pool of identifier names to use.
+     */
+    public Tokenizer(CharSequence text, IdentifierPool pool)
+    {
+        this.text = text;
+        this.ascii = text instanceof AsciiText a ? a : null;
+        this.pool = pool;
+        this.end = text.length();
+        pos = 0;
+        moveToNextToken();
+    }
+
+    /**
+     * Start again on new text, so that one Tokenizer can be used for
+     * many sources. Nothing of the previous text is kept.
+     * @param text The text to be tokenized.
+     * @param pool The pool of identifier names to use.
+     */
+    public void reset(CharSequence text, IdentifierPool pool)
+    {
+        this.text = text;
+        this.ascii = text instanceof AsciiText a ? a : null;
+        this.pool = pool;
+        this.end = text.length();
+        pos = 0;
+        if(lines != null) {
+            lines.reset(text);
+        }
+        tokenType = null;
+        keyword = null;
+        symbol = 0;
+        tokenStart = 0;
+        tokenLength = 0;
+        identifier = null;
+        identifierId = 0;
+        intVal = 0;
+        stringVal = null;
+        moveToNextToken();
+    }
+
+    /**
+     * Start again on the given file, as above. The file is read into
+     * buffers kept from one file to the next, which are only replaced
+     * when a larger file comes along, so that reading many files does
+     * not map or allocate a buffer for each.
+     * @param path The file to be read.
+     * @param pool The pool of identifier names to use.
+     * @throws IOException if the file cannot be read.
+     */
+    public void reset(Path path, IdentifierPool pool)
+            throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > MAX_REUSED_BUFFER) {
+                reset(read(path), pool);
+                return;
+            }
+            if(input == null || input.capacity() < size) {
+                input = ByteBuffer.allocate(Math.max((int) size, BUFFER_SIZE));
+            }
+            input.clear().limit((int) size);
+            while(input.hasRemaining() && channel.read(input) >= 0) {
+                // Until the whole file is read.
+            }
+            input.flip();
+        }
+        reset(input, pool);
+    }
+
+    /**
+     * Start again on the bytes of a source, as above, held from the
+     * buffer's position to its limit. ASCII bytes are scanned in place,
+     * so they must not change while they are being tokenized; anything
+     * else is decoded as a FileReader would.
+     * @param bytes The bytes to be tokenized.
+     * @param pool The pool of identifier names to use.
+     */
+    public void reset(ByteBuffer bytes, IdentifierPool pool)
+    {
+        // A slice, so that the caller's position is left alone.
+        ByteBuffer source = bytes.slice();
+        if(AsciiText.isAscii(source)) {
+            reset(new AsciiText(source), pool);
+        }
+        else {
+            reset(decode(source), pool);
+        }
+    }
+
+    /**
+     * Decode bytes that are not all ASCII as a FileReader would.
+     * @param bytes The bytes.
+     * @return the characters, in a buffer that is reused.
+     */
+    private CharBuffer decode(ByteBuffer bytes)
+    {
+        if(decoder == null) {
+            decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        int capacity = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte());
+        if(decoded == null || decoded.capacity() < capacity) {
+            decoded = CharBuffer.allocate(Math.max(capacity, BUFFER_SIZE));
+        }
+        decoded.clear();
+        decoder.reset();
+        decoder.decode(bytes, decoded, true);
+        decoder.flush(decoded);
+        return decoded.flip();
+    }
+
+    /**
+     * Create a Tokenizer that starts part way through the given text.
+     * @param text The text to be tokenized.
+     * @param pool The pool of identifier names to use.
+     * @param start The offset of the start of a token.
+     */
+    Tokenizer(CharSequence text, IdentifierPool pool, int start)
+    {
+        this.text = text;
+        this.ascii = text instanceof AsciiText a ? a : null;
+        this.pool = pool;
+        this.end = text.length();
+        this.pos = start;
         moveToNextToken();
     }
-    
+
     /**
      * Are there any more tokens?
      * @return true if there is at least one more token.
      */
+    @Override
     public boolean hasMoreTokens()
     {
-        return currentLine != null;
+        return pos < end;
     }
-    
+
     /**
      * Advance to the next token.
      */
+    @Override
     public void advance()
-    {        
-        assert hasMoreTokens();
-        
+    {
+        if(!hasMoreTokens()) {
+            throw new IllegalStateException("No more tokens");
+        }
+
         tokenType = null;
         keyword = null;
         symbol = 0;
         identifier = null;
+        identifierId = -1;
         intVal = Integer.MIN_VALUE;
         stringVal = null;
-        
+
         decodeNextToken();
-        //debug();
         moveToNextToken();
     }
-    
+
+    /**
+     * Is the next token the given symbol?
+     * The cursor is already at its first character.
+     */
+    @Override
+    public boolean nextIsSymbol(char symbol)
+    {
+        return pos < end && text.charAt(pos) == symbol;
+    }
+
     /**
      * A debugging method.
      * Return details of the current token.
@@ -79,64 +311,97 @@ public class Tokenizer {
             case KEYWORD:
                 s.append(keyword); break;
             case IDENTIFIER:
-                s.append(identifier); break;
+                s.append(getIdentifier()); break;
             case SYMBOL:
                 s.append(symbol); break;
             case INT_CONST:
                 s.append(intVal); break;
             case STRING_CONST:
-                s.append(stringVal); break;
+                s.append(getStringVal()); break;
             default:
                 s.append("???"); break;
-                
+
         }
         s.append(' ');
         return s.toString();
     }
-    
+
     /**
      * Return the current token.
      * @return the current token.
      */
+    @Override
     public Token getTokenType()
     {
         return tokenType;
     }
-    
+
     /**
      * Return the current keyword.
      * @return the current keyword.
      */
+    @Override
     public Keyword getKeyword()
     {
         assert tokenType == Token.KEYWORD;
         return keyword;
     }
-    
+
     /**
      * Return the current symbol.
      * @return the current symbol.
      */
+    @Override
     public char getSymbol()
     {
         assert tokenType == Token.SYMBOL;
         return symbol;
     }
-    
+
     /**
      * Return the text of the current identifier.
+     * The text is only copied out of the input on the first request.
      * @return the current identifier.
      */
+    @Override
     public String getIdentifier()
     {
         assert tokenType == Token.IDENTIFIER;
+        if(identifier == null && tokenType == Token.IDENTIFIER) {
+            identifier = text.subSequence(tokenStart, tokenStart + tokenLength).toString();
+        }
         return identifier;
     }
-    
+
+    /**
+     * Return the id of the current identifier in the identifier pool.
+     * @return the id of the current identifier.
+     */
+    @Override
+    public int getIdentifierId()
+    {
+        assert tokenType == Token.IDENTIFIER;
+        if(identifierId < 0 && tokenType == Token.IDENTIFIER) {
+            identifierId = pool.intern(text, tokenStart, tokenLength);
+        }
+        return identifierId;
+    }
+
+    /**
+     * Return the pool that holds the names of identifiers.
+     * @return the identifier pool.
+     */
+    @Override
+    public IdentifierPool getIdentifierPool()
+    {
+        return pool;
+    }
+
     /**
      * Return the integer that is the current INT_CONST
      * @return the current integer.
      */
+    @Override
     public int getIntval()
     {
         assert tokenType == Token.INT_CONST;
@@ -145,76 +410,153 @@ public class Tokenizer {
 
     /**
      * Return the string that is the current STRING_CONST
+     * The text is only copied out of the input on the first request.
      * @return the current string.
      */
+    @Override
     public String getStringVal()
     {
         assert tokenType == Token.STRING_CONST;
+        if(stringVal == null && tokenType == Token.STRING_CONST) {
+            // Exclude the quotes.
+            stringVal = text.subSequence(tokenStart + 1, tokenStart + tokenLength - 1).toString();
+        }
         return stringVal;
     }
-    
+
     /**
-     * Return the number of the current line being processed.
+     * Return the number of the current line being processed: the line
+     * of the start of the next token. As a reader does, the end of
+     * input is reported as one further line beyond the last one read.
      * @return the current line number.
      */
+    @Override
     public int getLineNumber()
     {
-        return lineNumber;
+        int line = lines().lineOf(lineOffset);
+        if(lineOffset == end && end > 0 && !isLineEnd(text.charAt(end - 1))) {
+            line++;
+        }
+        return line;
+    }
+
+    @Override
+    public int getTokenLine()
+    {
+        return lines().lineOf(tokenStart);
+    }
+
+    @Override
+    public int getTokenColumn()
+    {
+        return lines().columnOf(tokenStart);
+    }
+
+    /**
+     * @return the index of the lines of the text, made when first needed.
+     */
+    private LineIndex lines()
+    {
+        if(lines == null) {
+            lines = new LineIndex(text);
+        }
+        return lines;
+    }
+
+    /**
+     * @return the offset whose line is the current line number: the
+     *         start of the next token, or the end of the text.
+     */
+    int getLineOffset()
+    {
+        return lineOffset;
+    }
+
+    /**
+     * Return the offset of the current token in the text.
+     * @return the offset of the first character of the current token.
+     */
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+
+    /**
+     * Return the length of the text of the current token.
+     * @return the number of characters in the current token.
+     */
+    public int getTokenLength()
+    {
+        return tokenLength;
+    }
+
+    /**
+     * Return the offset of the next token in the text.
+     * @return the offset of the first character of the next token,
+     *         or the length of the text if there are no more.
+     */
+    int getNextTokenStart()
+    {
+        return pos;
     }
-    
+
+    /**
+     * Return the text being tokenized.
+     * @return the whole of the text.
+     */
+    CharSequence getText()
+    {
+        return text;
+    }
+
     /**
      * Decode the next token.
-     * The current line is position at its first character.
+     * The cursor is positioned at its first character.
      */
     private void decodeNextToken()
     {
-        char c = currentLine.charAt(0);
+        int start = pos;
+        char c = text.charAt(pos++);
         if(Character.isAlphabetic(c) || c == '_') {
-            int index = 1;
-            int len = currentLine.length();
-            while(index < len && isIdChar(currentLine.charAt(index))) {
-                index++;
+            while(pos < end && isIdChar(text.charAt(pos))) {
+                pos++;
             }
-            String word = currentLine.substring(0, index);
-            currentLine = currentLine.substring(index);
-            keyword = Keyword.identify(word);
+            keyword = Keyword.identify(text, start, pos - start);
             if(keyword != null) {
                 tokenType = Token.KEYWORD;
             }
             else {
                 tokenType = Token.IDENTIFIER;
-                identifier = word;
             }
         }
         else if(Character.isDigit(c)) {
             tokenType = Token.INT_CONST;
-            int index = 1;
-            int len = currentLine.length();
-            while(index < len && Character.isDigit(currentLine.charAt(index))) {
-                index++;
+            int value = Character.digit(c, 10);
+            while(pos < end && Character.isDigit(text.charAt(pos))) {
+                value = Math.addExact(Math.multiplyExact(value, 10),
+                                      Character.digit(text.charAt(pos), 10));
+                pos++;
             }
-            String num = currentLine.substring(0, index);
-            currentLine = currentLine.substring(index);
-            intVal = Integer.parseInt(num);
-        }  
+            intVal = value;
+        }
         else if(c == '"') {
-            currentLine = currentLine.substring(1);
             tokenType = Token.STRING_CONST;
-            int index = 0;
-            int len = currentLine.length();
-            while(index < len && currentLine.charAt(index) != '"') {
-                index++;
+            if(ascii != null) {
+                pos = ascii.indexOfStringEnd(pos, end);
+            }
+            else {
+                while(pos < end && text.charAt(pos) != '"' && !isLineEnd(text.charAt(pos))) {
+                    pos++;
+                }
             }
-            if(index < len) {
-                stringVal = currentLine.substring(0, index);
-                currentLine = currentLine.substring(index + 1);
+            if(pos < end && text.charAt(pos) == '"') {
+                pos++;
             }
             else {
                 throw new IllegalStateException("Unterminated string");
             }
         }
         else {
-            currentLine = currentLine.substring(1);
             switch(c) {
                 case '+':
                 case '-':
@@ -243,9 +585,10 @@ public class Tokenizer {
                             "Unrecognised character: " + c);
             }
         }
-        currentLine = currentLine.trim();
+        tokenStart = start;
+        tokenLength = pos - start;
     }
-    
+
     /**
      * Is the given character belongs in an identifier?
      * @param c The character to test.
@@ -257,114 +600,133 @@ public class Tokenizer {
                Character.isDigit(c) ||
                c == '_';
     }
-    
+
+    /**
+     * Does the given character end a line?
+     * @param c The character to test.
+     * @return true if the character is a line terminator.
+     */
+    private static boolean isLineEnd(char c)
+    {
+        return c == '\n' || c == '\r';
+    }
+
     /**
      * Find the start of the next token, skipping any
-     * blank lines and comments.
+     * whitespace and comments.
+     * Whitespace is anything that String.trim() would remove.
      */
     private void moveToNextToken()
     {
-        currentLine = currentLine.trim();
-        while(currentLine != null && currentLine.isEmpty()) {
-            currentLine = readNonblankLine();
-        }
-        while(currentLine != null &&
-                    currentLine.length() >= 2 && 
-                    currentLine.charAt(0) == COMMENT_CHAR &&
-                    (currentLine.charAt(1) == COMMENT_CHAR ||
-                     currentLine.charAt(1) == '*')) {
-            if(currentLine.charAt(1) == COMMENT_CHAR) {
-                // Single-line comment.
-                currentLine = readNonblankLine();
+        while(pos < end) {
+            char c = text.charAt(pos);
+            if(c <= ' ') {
+                pos++;
+                // Search longer runs, such as indentation, by the word.
+                if(ascii != null && pos < end && text.charAt(pos) <= ' ') {
+                    pos = ascii.skipBlanks(pos, end);
+                }
             }
-            else if(currentLine.charAt(1) == '*') {
-                // Multi-line comment.
-                currentLine = skipMultiLineComment(currentLine);
-                if(currentLine != null) {
-                    currentLine = currentLine.trim();
-                    if(currentLine.isEmpty()) {
-                        currentLine = readNonblankLine();
+            else if(c == COMMENT_CHAR && pos + 1 < end &&
+                        text.charAt(pos + 1) == COMMENT_CHAR) {
+                // Single-line comment.
+                pos += 2;
+                if(ascii != null) {
+                    pos = ascii.indexOfLineEnd(pos, end);
+                }
+                else {
+                    while(pos < end && !isLineEnd(text.charAt(pos))) {
+                        pos++;
                     }
                 }
             }
+            else if(c == COMMENT_CHAR && pos + 1 < end &&
+                        text.charAt(pos + 1) == '*') {
+                // Multi-line comment.
+                skipMultiLineComment();
+            }
+            else {
+                break;
+            }
         }
+        lineOffset = pos;
     }
-        
+
     /**
-     * The given line includes the start of a multi-line comment.
-     * Find and return the next significant text beyond the comment.
-     * @param line The start of the commen.
-     * @return the next significant text beyond the comment.
+     * The cursor is at the start of a multi-line comment.
+     * Move it beyond the end of the comment, or to the end of the
+     * input if the comment is unterminated.
      */
-    private String skipMultiLineComment(String line)
+    private void skipMultiLineComment()
     {
-        // Drop the first two characters.
-        line = line.substring(2);
-        boolean endFound = false;
-        while(!endFound && line != null) {
-            int index = 0;
-            int len = line.length();
-            while(index < len && line.charAt(index) != '*') {
-                index++;
-            }
-            if(index == len) {
-                line = readNonblankLine();
+        // Skip the opening characters.
+        pos += 2;
+        if(ascii != null) {
+            int close = ascii.indexOfCommentEnd(pos, end);
+            pos = close < end ? close + 2 : end;
+            return;
+        }
+        while(pos < end) {
+            char c = text.charAt(pos);
+            if(c == '*' && pos + 1 < end && text.charAt(pos + 1) == COMMENT_CHAR) {
+                pos += 2;
+                return;
             }
-            else {
-                // Possible end of comment.
-                if(index + 1 < len && line.charAt(index + 1) == COMMENT_CHAR) {
-                    endFound = true;
-                    line = line.substring(index + 2);
-                }
-                else {
-                    // Skip the '*'.
-                    line = line.substring(index + 1);
+            pos++;
+        }
+    }
+
+    /**
+     * Open the given file for scanning.
+     * If the file only holds ASCII bytes then it is mapped into memory
+     * and scanned in place, otherwise it is decoded via a Reader.
+     * Either way, every byte of the file has been read on return.
+     * @param path The file to be read.
+     * @return a view of the characters of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static CharSequence read(Path path)
+            throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size <= Integer.MAX_VALUE) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if(AsciiText.isAscii(bytes)) {
+                    return new AsciiText(bytes);
                 }
             }
         }
-        return line;
+        try(BufferedReader reader = new BufferedReader(new FileReader(path.toFile()))) {
+            return readAll(reader);
+        }
     }
-    
+
     /**
-     * Read and return the next non-blank line.
-     * @return The next line, or null if there are none.
+     * Read the whole of the given input into a single buffer.
+     * @param reader The input.
+     * @return a view of the characters read.
      * @throws UnexpectedIOException on any input error.
      */
-    private String readNonblankLine()
+    private static CharSequence readAll(BufferedReader reader)
             throws UnexpectedIOException
     {
         try {
-            String line = input.readLine();
-            lineNumber++;
-            debug(line);
-            while(line != null && line.trim().isEmpty()) {
-                line = input.readLine();
-                lineNumber++;
-                debug(line);
-            }
-            if(line != null) {
-                //System.out.println(line);
-                return line.trim();
-            }
-            else {
-                return line;
+            char[] buffer = new char[BUFFER_SIZE];
+            int length = 0;
+            int n;
+            while((n = reader.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+                if(length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
             }
+            return CharBuffer.wrap(buffer, 0, length);
         } catch (IOException ex) {
             throw new UnexpectedIOException(ex.getMessage());
         }
     }
-    
-    /**
-     * Print the given string.
-     * @param s The string to be printed.
-     */
-    private void debug(String s)
-    {
-        if(debug && s != null) {
-            System.out.println(s);
-        }
-    }
-    
+
     /**
      * An unexpected read error occurred.
      * Handle via an unchecked exception rather than an IOException.